@@ -0,0 +1,146 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sorts many files in one JVM on a bounded pool of workers.
+ * Every job reads, sorts and writes one file; all jobs share the same {@link Sorter} instance,
+ * and the I/O buffers are reused through {@link BufferPool}.
+ * A failed job is reported and does not stop the others, whatever it throws.
+ */
+public class Batch {
+    /**
+     * One input file and the file its sorted values are written to.
+     */
+    public static class Job {
+        final String inputType;
+        final String inputFile;
+        final String outputType;
+        final String outputFile;
+
+        public Job(String inputType, String inputFile, String outputType, String outputFile) {
+            this.inputType = inputType;
+            this.inputFile = inputFile;
+            this.outputType = outputType;
+            this.outputFile = outputFile;
+        }
+    }
+
+    private final Sorter sorter;
+    private final int workers;
+
+    private final AtomicInteger done = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private final AtomicLong values = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+    private long time;
+
+    public Batch(Sorter sorter, int workers) {
+        if (workers <= 0)
+            throw new IllegalArgumentException("Illegal number of workers: " + workers);
+        this.sorter = sorter;
+        this.workers = workers;
+    }
+
+    /**
+     * Read a manifest with one job per line: <code>&lt;input type&gt;,&lt;input file&gt; &lt;output type&gt;,&lt;output file&gt;</code>.
+     * Blank lines and lines starting with '#' are skipped.
+     */
+    public static List<Job> readManifest(File manifest) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        try (BufferedReader in = new BufferedReader(new java.io.FileReader(manifest))) {
+            String line;
+            for (int n = 1; (line = in.readLine()) != null; n++) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                String[] fields = line.split("\\s+");
+                String[] input = fields[0].split(",", 2);
+                String[] output = (fields.length > 1) ? fields[1].split(",", 2) : new String[0];
+                if (fields.length != 2 || input.length != 2 || output.length != 2)
+                    throw new IOException(manifest + ":" + n + ": expected <input type>,<input file> <output type>,<output file>");
+                jobs.add(new Job(input[0], input[1], output[0], output[1]));
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * @return whether the file name is a glob pattern rather than a single file
+     */
+    public static boolean isGlob(String fileName) {
+        return fileName.indexOf('*') >= 0 || fileName.indexOf('?') >= 0
+                || fileName.indexOf('[') >= 0 || fileName.indexOf('{') >= 0;
+    }
+
+    /**
+     * One job per file matching the pattern, which may only have wildcards in its last name.
+     * The outputs have the names of the inputs, in <code>outputDir</code>, which must not be the directory of the inputs.
+     */
+    public static List<Job> glob(String inputType, String pattern, String outputType, String outputDir) throws IOException {
+        Path path = Paths.get(pattern);
+        Path dir = (path.getParent() == null) ? Paths.get(".") : path.getParent();
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, path.getFileName().toString())) {
+            for (Path p : stream)
+                if (Files.isRegularFile(p))
+                    files.add(p);
+        }
+        Collections.sort(files);
+
+        Path out = Paths.get(outputDir);
+        if (Files.isDirectory(out) && Files.isSameFile(dir, out))
+            throw new IOException(outputDir + ": the output directory is the input directory, the inputs would be overwritten");
+        Files.createDirectories(out);
+        List<Job> jobs = new ArrayList<>();
+        for (Path p : files)
+            jobs.add(new Job(inputType, p.toString(), outputType, out.resolve(p.getFileName().toString()).toString()));
+        return jobs;
+    }
+
+    public void run(List<Job> jobs, PrintStream err) throws InterruptedException {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            for (Job job : jobs)
+                pool.execute(() -> {
+                    try {
+                        run(job);
+                        done.incrementAndGet();
+                    } catch (Throwable e) {
+                        // errors such as OutOfMemoryError fail this job only, the others go on
+                        failed.incrementAndGet();
+                        err.println(job.inputFile + ": " + ((e instanceof Exception) ? e.getMessage() : e));
+                    }
+                });
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            time = System.nanoTime() - start;
+        }
+    }
+
+    private void run(Job job) throws Exception {
+        DataReader reader = DataReaderFactory.newInstance(job.inputType, job.inputFile);
+        DataWriter writer = DataWriterFactory.newInstance(job.outputType, job.outputFile);
+        double[] array = reader.read();
+        sorter.sort(array);
+        writer.write(array);
+        values.addAndGet(array.length);
+        bytes.addAndGet(new File(job.inputFile).length());
+    }
+
+    public void printSummary(PrintStream out) {
+        double seconds = time / 1e9;
+        out.printf("%d jobs done, %d failed in %.2f s on %d workers\n", done.get(), failed.get(), seconds, workers);
+        out.printf("%.1f jobs/s, %.0f values/s, %.1f MB/s read\n",
+                done.get() / seconds, values.get() / seconds, bytes.get() / 1048576.0 / seconds);
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+}
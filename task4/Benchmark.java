@@ -0,0 +1,300 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Measures the throughput of the readers, writers and sorters of Task4.
+ * The sorter type "jdk" stands for <code>Arrays.sort</code>.
+ * Sorters are run on random data by default, or on one of the distributions of {@link #array(String, int)}.
+ * Every benchmark is run a few times to warm up the JIT and then timed a few more times,
+ * operations slower than {@link #SLOW_OPERATION} are timed once.
+ * The suite mode runs every sorter, reader and writer and saves the results as JSON to compare runs.
+ */
+public class Benchmark {
+    private static final String USAGE = "Usage:\n"
+            + "  java Benchmark generate <file> <count>\n"
+            + "  java Benchmark read <file> <reader type>...\n"
+            + "  java Benchmark write <plain file> <writer type>...\n"
+            + "  java Benchmark sort <size>[,<distribution>] <sorter type>...\n"
+            + "  java Benchmark scale <size> [<max threads>]\n"
+            + "  java Benchmark suite <json file> [<max sort size> [<io size>]]";
+
+    private static final String[] DISTRIBUTIONS = { "random", "sorted", "reversed", "nearly", "fewunique", "sawtooth" };
+    private static final String[] WRITERS = { "plain", "csv", "xml", "stax", "binary" };
+    /**
+     * Reader types and the writer type of the files they read.
+     */
+    private static final String[][] READERS = {
+            { "plain", "plain" }, { "fast", "plain" }, { "csv", "csv" },
+            { "xml", "xml" }, { "stax", "xml" }, { "binary", "binary" } };
+
+    /**
+     * Milliseconds after which an operation is timed only once, and the sorter is not run on larger sizes.
+     */
+    private static final long SLOW_OPERATION = 2000;
+
+    private static int warmupIterations = 1;
+    private static int measureIterations = 3;
+
+    interface Operation {
+        void run() throws Exception;
+    }
+
+    static class Result {
+        final String benchmark;
+        final String type;
+        final String distribution;
+        final long size;
+        final double ms;
+        final long bytes;
+
+        Result(String benchmark, String type, String distribution, long size, double ms, long bytes) {
+            this.benchmark = benchmark;
+            this.type = type;
+            this.distribution = distribution;
+            this.size = size;
+            this.ms = ms;
+            this.bytes = bytes;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        switch (args[0]) {
+            case "generate":
+                if (args.length < 3) {
+                    System.err.println(USAGE);
+                    System.exit(1);
+                }
+                generate(new File(args[1]), Long.parseLong(args[2]));
+                break;
+            case "read":
+                String fileName = args[1];
+                long bytes = new File(fileName).length();
+                for (int i = 2; i < args.length; i++) {
+                    DataReader reader = DataReaderFactory.newInstance(args[i], fileName);
+                    measure("read " + args[i], bytes, () -> reader.read());
+                }
+                break;
+            case "write":
+                double[] array = DataReaderFactory.newInstance("fast", args[1]).read();
+                File out = File.createTempFile("benchmark", ".out");
+                out.deleteOnExit();
+                for (int i = 2; i < args.length; i++) {
+                    DataWriter writer = DataWriterFactory.newInstance(args[i], out.getPath());
+                    measure("write " + args[i], array.length * 8L, () -> writer.write(array));
+                }
+                break;
+            case "sort":
+                String[] spec = args[1].split(",");
+                double[] data = array((spec.length > 1) ? spec[1] : "random", Integer.parseInt(spec[0]));
+                for (int i = 2; i < args.length; i++) {
+                    Sorter sorter = args[i].equals("jdk") ? Arrays::sort : SorterFactory.getInstance(args[i]);
+                    measure("sort " + args[i], data.length * 8L, () -> sorter.sort(data.clone()));
+                }
+                break;
+            case "scale":
+                double[] values = randomArray(Integer.parseInt(args[1]));
+                int maxThreads = (args.length > 2) ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+                double base = 0;
+                for (int t = 1; ; t = Math.min(t * 2, maxThreads)) {
+                    Sorter sorter = new ParallelSorter(t, ParallelSorter.DEFAULT_THRESHOLD);
+                    double ms = measure("sort parallel x" + t, values.length * 8L, () -> sorter.sort(values.clone()));
+                    base = (t == 1) ? ms : base;
+                    System.out.printf("%-40s %12.2f speedup\n", "", base / ms);
+                    if (t == maxThreads)
+                        break;
+                }
+                break;
+            case "suite":
+                long maxSize = (args.length > 2) ? (long) Double.parseDouble(args[2]) : 100000000;
+                int ioSize = (args.length > 3) ? (int) Double.parseDouble(args[3]) : 1000000;
+                List<Result> results = new ArrayList<>();
+                sortSuite(maxSize, results);
+                ioSuite(ioSize, results);
+                writeJson(new File(args[1]), results);
+                break;
+            default:
+                System.err.println(USAGE);
+                System.exit(1);
+        }
+    }
+
+    /**
+     * Run every sorter and <code>Arrays.sort</code> on every distribution, for sizes from 1e3 up to
+     * <code>maxSize</code> by powers of ten. Sizes that do not fit in the heap are skipped, and so are
+     * the sizes above the first one a sorter takes longer than {@link #SLOW_OPERATION} on:
+     * the quadratic sorters stop early and the rest of the suite stays affordable.
+     */
+    public static void sortSuite(long maxSize, List<Result> results) throws Exception {
+        List<String> types = new ArrayList<>(Arrays.asList(SorterFactory.TYPES));
+        types.add("jdk");
+        long maxMemory = Runtime.getRuntime().maxMemory();
+
+        for (String distribution : DISTRIBUTIONS) {
+            Set<String> stopped = new HashSet<>();
+            for (long size = 1000; size <= maxSize; size *= 10) {
+                // the data, the copy being sorted and the buffer of a merge sort
+                if (size * 8 * 4 > maxMemory) {
+                    System.out.printf("skip size %d: needs -Xmx%dm\n", size, size * 8 * 4 >> 20);
+                    break;
+                }
+                double[] data = array(distribution, (int) size);
+                for (String type : types) {
+                    if (stopped.contains(type))
+                        continue;
+                    Sorter sorter = type.equals("jdk") ? Arrays::sort : SorterFactory.getInstance(type);
+                    String name = "sort " + type + " " + distribution + " " + size;
+                    double ms;
+                    try {
+                        ms = measure(name, size * 8, () -> sorter.sort(data.clone()));
+                    } catch (StackOverflowError e) {
+                        System.out.printf("%-40s stack overflow\n", name);
+                        stopped.add(type);
+                        continue;
+                    }
+                    results.add(new Result("sort", type, distribution, size, ms, size * 8));
+                    if (ms > SLOW_OPERATION)
+                        stopped.add(type);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write <code>size</code> random values with every writer and read the files back with every reader.
+     * Throughput is counted in bytes of the file.
+     */
+    public static void ioSuite(int size, List<Result> results) throws Exception {
+        double[] array = randomArray(size);
+        Map<String, File> files = new HashMap<>();
+        try {
+            for (String type : WRITERS) {
+                File file = File.createTempFile("benchmark", "." + type);
+                file.deleteOnExit();
+                files.put(type, file);
+                DataWriter writer = DataWriterFactory.newInstance(type, file.getPath());
+                writer.write(array);
+                double ms = measure("write " + type, file.length(), () -> writer.write(array));
+                results.add(new Result("write", type, "random", size, ms, file.length()));
+            }
+            for (String[] type : READERS) {
+                File file = files.get(type[1]);
+                DataReader reader = DataReaderFactory.newInstance(type[0], file.getPath());
+                double ms = measure("read " + type[0], file.length(), () -> reader.read());
+                results.add(new Result("read", type[0], "random", size, ms, file.length()));
+            }
+        } finally {
+            for (File f : files.values())
+                f.delete();
+        }
+    }
+
+    public static void writeJson(File file, List<Result> results) throws IOException {
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new java.io.FileWriter(file)))) {
+            out.println("{");
+            out.printf("  \"java\": \"%s\",\n", System.getProperty("java.version"));
+            out.printf("  \"processors\": %d,\n", Runtime.getRuntime().availableProcessors());
+            out.printf("  \"maxMemory\": %d,\n", Runtime.getRuntime().maxMemory());
+            out.printf("  \"timestamp\": %d,\n", System.currentTimeMillis());
+            out.println("  \"results\": [");
+            for (int i = 0; i < results.size(); i++) {
+                Result r = results.get(i);
+                out.printf(Locale.ROOT, "    {\"benchmark\": \"%s\", \"type\": \"%s\", \"distribution\": \"%s\", "
+                                + "\"size\": %d, \"msPerOp\": %.3f, \"mbPerSec\": %.3f}%s\n",
+                        r.benchmark, r.type, r.distribution, r.size, r.ms,
+                        r.bytes / 1048576.0 / (r.ms / 1000), (i < results.size() - 1) ? "," : "");
+            }
+            out.println("  ]");
+            out.println("}");
+        }
+    }
+
+    /**
+     * Write <code>count</code> random values in the plain format, one per line.
+     */
+    public static void generate(File file, long count) throws IOException {
+        Random random = new Random(42);
+        try (PrintWriter out = new PrintWriter(new BufferedWriter(new java.io.FileWriter(file), 1 << 16))) {
+            for (long i = 0; i < count; i++)
+                out.println(random.nextDouble() * 2000000 - 1000000);
+        }
+    }
+
+    public static double[] randomArray(int size) {
+        Random random = new Random(42);
+        double[] array = new double[size];
+        for (int i = 0; i < size; i++)
+            array[i] = random.nextDouble();
+        return array;
+    }
+
+    /**
+     * @param distribution "random", "sorted", "reversed", "nearly" (sorted, with 1% of the values displaced),
+     *                     "fewunique" (16 distinct values) or "sawtooth" (64 ascending runs)
+     */
+    public static double[] array(String distribution, int size) {
+        double[] array = randomArray(size);
+        switch (distribution) {
+            case "random":
+                break;
+            case "sorted":
+                Arrays.sort(array);
+                break;
+            case "reversed":
+                Arrays.sort(array);
+                for (int i = 0, j = size - 1; i < j; i++, j--) {
+                    double t = array[i];
+                    array[i] = array[j];
+                    array[j] = t;
+                }
+                break;
+            case "nearly":
+                Arrays.sort(array);
+                Random random = new Random(7);
+                for (int k = 0; k < size / 100; k++)
+                    array[random.nextInt(size)] = random.nextDouble();
+                break;
+            case "fewunique":
+                for (int i = 0; i < size; i++)
+                    array[i] = Math.floor(array[i] * 16);
+                break;
+            case "sawtooth":
+                int period = Math.max(1, size / 64);
+                for (int i = 0; i < size; i++)
+                    array[i] = i % period;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown distribution: " + distribution);
+        }
+        return array;
+    }
+
+    /**
+     * @return the average time of one run in milliseconds
+     */
+    public static double measure(String name, long bytes, Operation op) throws Exception {
+        double ms = 0;
+        for (int i = 0; i < warmupIterations; i++) {
+            long start = System.nanoTime();
+            op.run();
+            ms = (System.nanoTime() - start) / 1e6;
+        }
+
+        if (ms <= SLOW_OPERATION) {
+            long total = 0;
+            for (int i = 0; i < measureIterations; i++) {
+                long start = System.nanoTime();
+                op.run();
+                total += System.nanoTime() - start;
+            }
+            ms = total / 1e6 / measureIterations;
+        }
+
+        System.out.printf("%-40s %12.1f ms/op %10.1f MB/s\n", name, ms, bytes / 1048576.0 / (ms / 1000));
+        return ms;
+    }
+}
@@ -0,0 +1,42 @@
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * A bounded pool of I/O buffers, so that readers and writers opened one after the other,
+ * as in batch jobs, reuse their buffers instead of allocating them for every file.
+ * A buffer must not be used after it is released.
+ */
+class BufferPool<T> {
+    /**
+     * Direct buffers of {@link BinaryFileWriter#BUFFER_SIZE} bytes.
+     */
+    static final BufferPool<ByteBuffer> DIRECT = new BufferPool<>(() -> ByteBuffer.allocateDirect(BinaryFileWriter.BUFFER_SIZE));
+
+    private static final int MAX_FREE = 16;
+
+    private final Supplier<T> factory;
+    private final Queue<T> free = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger freeCount = new AtomicInteger();
+
+    public BufferPool(Supplier<T> factory) {
+        this.factory = factory;
+    }
+
+    public T acquire() {
+        T buffer = free.poll();
+        if (buffer == null)
+            return factory.get();
+        freeCount.decrementAndGet();
+        return buffer;
+    }
+
+    public void release(T buffer) {
+        if (freeCount.incrementAndGet() <= MAX_FREE)
+            free.offer(buffer);
+        else
+            freeCount.decrementAndGet();
+    }
+}
@@ -0,0 +1,500 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+
+/**
+ * Checks the sorters, {@link Selector} and the number parsing of the readers against the JDK:
+ * the sorters and the selection against <code>Arrays.sort</code>, {@link NumberScanner} against
+ * <code>Double.parseDouble</code> and <code>Scanner</code>, which the 'plain' reader uses.
+ * Inputs are random with a fixed seed and include the cases that are easy to get wrong:
+ * NaN, signed zeros, duplicates, sorted and reversed runs, number suffixes and non-ASCII bytes.
+ * The first failure of every check is printed, and the exit status is 1 if any check failed.
+ */
+public class Check {
+    private static final String USAGE = "Usage:\n"
+            + "  java Check all\n"
+            + "  java Check sort <sorter type>...\n"
+            + "  java Check select\n"
+            + "  java Check parse";
+
+    private static final int ITERATIONS = 3000;
+    /**
+     * Iterations, at the end, on arrays of up to {@link #LARGE_SIZE} values instead of {@link #SMALL_SIZE}.
+     */
+    private static final int LARGE_ITERATIONS = 30;
+    private static final int SMALL_SIZE = 300;
+    private static final int LARGE_SIZE = 200000;
+    private static final int QUADRATIC_SIZE = 2000;
+
+    /**
+     * Sorter types checked by 'all'; "parallel:2:64" forks down to ranges of 64 values, so small arrays
+     * go through the parallel merges too.
+     */
+    private static final String[] SORTERS = { "quick", "bubble", "shift", "intro", "parallel", "parallel:2:64", "radix", "natural", "auto" };
+    /**
+     * Sorters that order with the comparison operators, not as <code>Double.compare</code>:
+     * they are checked on inputs without NaN, and -0.0 and 0.0 count as equal.
+     */
+    private static final List<String> OPERATOR_ORDER = Arrays.asList("quick", "bubble", "shift");
+    /**
+     * Sorters that are quadratic on some inputs, such as presorted ones for the recursion depth of 'quick':
+     * they are checked on arrays of up to {@link #QUADRATIC_SIZE} values.
+     */
+    private static final List<String> QUADRATIC = Arrays.asList("quick", "bubble", "shift");
+
+    private static final int MODES = 10;
+    private static final int SPECIAL = 4;
+    private static final int RANDOM_BITS = 8;
+    private static final double[] SPECIALS = { Double.NaN, -0.0, 0.0, 1, -1, Double.MIN_VALUE, -Double.MAX_VALUE,
+            Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY };
+
+    private static int failures;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println(USAGE);
+            System.exit(1);
+        }
+
+        switch (args[0]) {
+            case "all":
+                for (String type : SORTERS)
+                    checkSort(type);
+                checkRadixBuffers();
+                checkAutoChoice();
+                checkExternal();
+                checkMetrics();
+                checkSelect();
+                checkParse();
+                break;
+            case "sort":
+                for (int i = 1; i < args.length; i++)
+                    checkSort(args[i]);
+                break;
+            case "select":
+                checkSelect();
+                break;
+            case "parse":
+                checkParse();
+                break;
+            default:
+                System.err.println(USAGE);
+                System.exit(1);
+        }
+        if (failures > 0)
+            System.exit(1);
+    }
+
+    /**
+     * @param mode 0: random, 1: few distinct integers, 2: ascending, 3: descending, 4: NaN, signed zeros and infinities,
+     *             5: non-increasing with ties, 6: nearly sorted, 7: sawtooth with noise, 8: random bits, NaNs included,
+     *             9: runs of random length, ascending, strictly descending or non-increasing, with ties
+     */
+    static double[] input(Random random, int mode, int size) {
+        double[] a = new double[size];
+        for (int i = 0; i < size; i++) {
+            switch (mode) {
+                case 0:
+                    a[i] = random.nextDouble() * 2 - 1;
+                    break;
+                case 1:
+                    a[i] = random.nextInt(5);
+                    break;
+                case 2:
+                    a[i] = i;
+                    break;
+                case 3:
+                    a[i] = size - i;
+                    break;
+                case SPECIAL:
+                    a[i] = SPECIALS[random.nextInt(SPECIALS.length)];
+                    break;
+                case 5:
+                    a[i] = (size - i) / 3;
+                    break;
+                case 6:
+                    a[i] = (random.nextInt(50) == 0) ? random.nextInt(size + 1) : i;
+                    break;
+                case 7:
+                    a[i] = i % 17 + ((random.nextInt(10) == 0) ? random.nextGaussian() : 0);
+                    break;
+                case RANDOM_BITS:
+                    a[i] = Double.longBitsToDouble(random.nextLong());
+                    break;
+                default:
+                    return runs(random, size);
+            }
+        }
+        return a;
+    }
+
+    private static double[] runs(Random random, int size) {
+        double[] a = new double[size];
+        for (int i = 0; i < size; ) {
+            int length = Math.min(size - i, 1 + random.nextInt(Math.max(1, size / 4)));
+            double start = random.nextInt(size + 1);
+            int direction = random.nextInt(3);
+            for (int k = 0; k < length; k++)
+                a[i++] = (direction == 0) ? start + k / 2 : (direction == 1) ? start - k : start - k / 2;
+        }
+        return a;
+    }
+
+    public static void checkSort(String type) {
+        Sorter sorter = SorterFactory.getInstance(type);
+        boolean exact = !OPERATOR_ORDER.contains(type);
+        int maxSize = QUADRATIC.contains(type) ? QUADRATIC_SIZE : LARGE_SIZE;
+        Random random = new Random(3);
+        for (int it = 0; it < ITERATIONS; it++) {
+            int mode = it % MODES;
+            int size = random.nextInt((it < ITERATIONS - LARGE_ITERATIONS) ? SMALL_SIZE : maxSize);
+            if (!exact && (mode == SPECIAL || mode == RANDOM_BITS))
+                continue;
+            double[] a = input(random, mode, size);
+            double[] expected = a.clone();
+            Arrays.sort(expected);
+            sorter.sort(a);
+            int i = mismatch(a, expected, exact);
+            if (i >= 0) {
+                fail("sort " + type, mode, size, "at " + i + ": " + a[i] + " instead of " + expected[i]);
+                return;
+            }
+        }
+        pass("sort " + type);
+    }
+
+    /**
+     * Radix sorts on one thread reuse their key buffers: arrays larger and smaller than the last one,
+     * empty ones, and one above {@link RadixSorter#MAX_KEPT} values that gets buffers of its own.
+     */
+    public static void checkRadixBuffers() {
+        Random random = new Random(13);
+        int[] sizes = { 1000, 10, 0, 5000, 1, 4999, RadixSorter.MAX_KEPT + 1, 3000 };
+        for (int size : sizes) {
+            double[] a = input(random, RANDOM_BITS, size);
+            double[] expected = a.clone();
+            Arrays.sort(expected);
+            RadixSorter.getInstance().sort(a);
+            int i = mismatch(a, expected, true);
+            if (i >= 0) {
+                fail("radix buffers", RANDOM_BITS, size, "at " + i + ": " + a[i] + " instead of " + expected[i]);
+                return;
+            }
+        }
+        pass("radix buffers");
+    }
+
+    /**
+     * The sorter {@link AutoSorter} picks for presorted, duplicate-heavy and random input, and that it only
+     * logs its choice when verbose.
+     */
+    public static void checkAutoChoice() {
+        int size = 65536;
+        Random random = new Random(17);
+        String[][] cases = {
+                { "2", "natural", "already in order" },
+                { "3", "natural", "reversed" },
+                { "5", "intro", "" },
+                { "1", "intro", "" },
+                { "0", "", "" } };
+        for (String[] c : cases) {
+            int mode = Integer.parseInt(c[0]);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new AutoSorter(new PrintStream(out, true), true).sort(input(random, mode, size));
+            String log = out.toString();
+            String chosen = c[1].isEmpty() ? (log.startsWith("auto: radix") ? "radix" : "parallel") : c[1];
+            if (!log.startsWith("auto: " + chosen + " ") || !log.contains(c[2])) {
+                fail("auto choice", mode, size, log.trim());
+                return;
+            }
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new AutoSorter(new PrintStream(out, true), false).sort(input(random, 0, size));
+        if (out.size() > 0) {
+            fail("auto choice", 0, size, "logged without verbose: " + out.toString().trim());
+            return;
+        }
+        pass("auto choice");
+    }
+
+    /**
+     * An external sort with room for the buffers of only four runs, so the runs go through intermediate merges
+     * into runs longer than a single one, which must leave no temporary files behind.
+     */
+    public static void checkExternal() throws Exception {
+        int size = 10000;
+        double[] a = input(new Random(19), RANDOM_BITS, size);
+        double[] expected = a.clone();
+        Arrays.sort(expected);
+        double[][] result = new double[1][];
+        File dir = Files.createTempDirectory("check").toFile();
+        try {
+            new ExternalSorter(IntroSorter.getInstance(), 100, dir, 8L * ExternalSorter.MIN_BUFFER_SIZE)
+                    .sort(() -> a.clone(), array -> result[0] = array);
+            String[] left = dir.list();
+            if (left.length > 0) {
+                fail("external", RANDOM_BITS, size, left.length + " temporary files left");
+                return;
+            }
+        } finally {
+            for (File f : dir.listFiles())
+                f.delete();
+            dir.delete();
+        }
+        int i = mismatch(result[0], expected, true);
+        if (result[0].length != size || i >= 0) {
+            fail("external", RANDOM_BITS, size, (result[0].length != size) ? result[0].length + " values"
+                    : "at " + i + ": " + result[0][i] + " instead of " + expected[i]);
+            return;
+        }
+        pass("external");
+    }
+
+    /**
+     * Instrumented sorts running at the same time, some of them forking workers, must report the counts
+     * they report when they run alone.
+     */
+    public static void checkMetrics() throws Exception {
+        String[] types = { "quick", "intro", "parallel:4:64", "natural", "parallel:2:256" };
+        Random random = new Random(23);
+        double[][] inputs = new double[types.length][];
+        String[] alone = new String[types.length];
+        for (int i = 0; i < types.length; i++) {
+            inputs[i] = input(random, i % MODES, QUADRATIC_SIZE);
+            alone[i] = metrics(types[i], inputs[i]);
+        }
+        for (int it = 0; it < 20; it++) {
+            String[] together = new String[types.length];
+            Thread[] threads = new Thread[types.length];
+            for (int i = 0; i < types.length; i++) {
+                int k = i;
+                threads[k] = new Thread(() -> together[k] = metrics(types[k], inputs[k]));
+                threads[k].start();
+            }
+            for (Thread t : threads)
+                t.join();
+            for (int i = 0; i < types.length; i++) {
+                if (!together[i].equals(alone[i])) {
+                    fail("metrics", i % MODES, QUADRATIC_SIZE, together[i] + " instead of " + alone[i]);
+                    return;
+                }
+            }
+        }
+        pass("metrics");
+    }
+
+    /**
+     * @return the report of an instrumented sort of a copy of <code>a</code>, without the time
+     */
+    private static String metrics(String type, double[] a) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new InstrumentedSorter(SorterFactory.getInstance(type), type, new PrintStream(out, true)).sort(a.clone());
+        return out.toString().replaceAll("\"ms\": [0-9.]+, ", "").trim();
+    }
+
+    /**
+     * @param exact whether the values must have the same bits, or only be equal with <code>==</code>
+     * @return the first index where the arrays differ, or -1
+     */
+    static int mismatch(double[] a, double[] expected, boolean exact) {
+        for (int i = 0; i < a.length; i++)
+            if (exact ? Double.doubleToLongBits(a[i]) != Double.doubleToLongBits(expected[i]) : a[i] != expected[i])
+                return i;
+        return -1;
+    }
+
+    /**
+     * Select, top-K both ways and quantiles, checked against the sorted array.
+     */
+    public static void checkSelect() {
+        Random random = new Random(5);
+        for (int it = 0; it < ITERATIONS; it++) {
+            int mode = it % MODES;
+            int size = 1 + random.nextInt((it < ITERATIONS - LARGE_ITERATIONS) ? SMALL_SIZE : LARGE_SIZE);
+            double[] a = input(random, mode, size);
+            double[] sorted = a.clone();
+            Arrays.sort(sorted);
+
+            int k = random.nextInt(size);
+            double[] b = a.clone();
+            double v = Selector.select(b, k);
+            if (Double.compare(v, sorted[k]) != 0) {
+                fail("select", mode, size, "rank " + k + ": " + v + " instead of " + sorted[k]);
+                return;
+            }
+            for (int i = 0; i < size; i++) {
+                if ((i < k) ? Double.compare(b[i], v) > 0 : Double.compare(b[i], v) < 0 && i > k) {
+                    fail("select", mode, size, "rank " + k + ": " + b[i] + " at " + i + " is on the wrong side");
+                    return;
+                }
+            }
+
+            int count = random.nextInt(size + 3);
+            double[] smallest = Selector.top(a, count, false);
+            if (!Arrays.equals(smallest, Arrays.copyOf(sorted, Math.min(count, size)))) {
+                fail("top min", mode, size, "k " + count);
+                return;
+            }
+            double[] largest = Selector.top(a, count, true);
+            for (int i = 0; i < largest.length; i++) {
+                if (Double.compare(largest[i], sorted[size - 1 - i]) != 0) {
+                    fail("top max", mode, size, "k " + count + " at " + i);
+                    return;
+                }
+            }
+
+            int values = size;
+            while (values > 0 && Double.isNaN(sorted[values - 1]))
+                values--;
+            double[] q = { 0, 0.25, 0.5, 0.99, 1, random.nextDouble() };
+            double[] result = Selector.quantiles(a.clone(), q);
+            for (int i = 0; i < q.length; i++) {
+                double expected = Double.NaN;
+                if (values > 0) {
+                    double h = (values - 1) * q[i];
+                    double lo = sorted[(int) Math.floor(h)], hi = sorted[(int) Math.ceil(h)];
+                    expected = (lo == hi) ? lo : lo + (h - Math.floor(h)) * (hi - lo);
+                }
+                if (Double.compare(result[i], expected) != 0) {
+                    fail("quantiles", mode, size, "q " + q[i] + ": " + result[i] + " instead of " + expected);
+                    return;
+                }
+            }
+        }
+        pass("select");
+    }
+
+    public static void checkParse() throws Exception {
+        checkNumbers();
+        checkStreams();
+        checkCsv();
+    }
+
+    /**
+     * Random decimal numbers parsed by {@link NumberScanner#parse(byte[], int)}, bit for bit as <code>Double.parseDouble</code>.
+     */
+    private static void checkNumbers() {
+        Random random = new Random(7);
+        for (int it = 0; it < 100 * ITERATIONS; it++) {
+            String s = (it % 3 == 0) ? Double.toString(Double.longBitsToDouble(random.nextLong()))
+                    : (it % 3 == 1) ? Double.toString(random.nextDouble() * Math.pow(10, random.nextInt(40) - 20))
+                    : decimal(random);
+            if (s.equals("NaN") || s.endsWith("Infinity"))
+                continue;
+            byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+            double expected = Double.parseDouble(s);
+            double actual = NumberScanner.parse(bytes, bytes.length);
+            if (Double.doubleToRawLongBits(actual) != Double.doubleToRawLongBits(expected)) {
+                fail("parse", it % 3, bytes.length, "\"" + s + "\": " + actual + " instead of " + expected);
+                return;
+            }
+        }
+        pass("parse numbers");
+    }
+
+    private static String decimal(Random random) {
+        StringBuilder sb = new StringBuilder();
+        if (random.nextBoolean())
+            sb.append(random.nextBoolean() ? '-' : '+');
+        int digits = random.nextInt(25);
+        for (int i = 0; i < digits; i++)
+            sb.append((char) ('0' + random.nextInt(10)));
+        if (digits == 0 || random.nextBoolean()) {
+            sb.append('.');
+            int fraction = 1 + random.nextInt(25);
+            for (int i = 0; i < fraction; i++)
+                sb.append((char) ('0' + random.nextInt(10)));
+        }
+        if (random.nextBoolean())
+            sb.append(random.nextBoolean() ? 'e' : 'E').append(random.nextInt(700) - 350);
+        return sb.toString();
+    }
+
+    /**
+     * Whole inputs read with {@link NumberScanner} and with <code>Scanner.nextDouble</code>, which both stop
+     * at the first token that is not a number.
+     */
+    private static void checkStreams() throws IOException {
+        List<String> inputs = new ArrayList<>(Arrays.asList(
+                "1 2d 3", "1 3f 2", "1 2D", "1 0x1p3 2", "1 0x1.8p1 2", "1 -0X.8P-1 0x1.8", "1 0x1.p1", "1 0x1.8p1d", "1 2 \u00e9 3", "temp\u00e9rature 1", "1 \u20ac",
+                "-NaN +Infinity -Infinity NaN 1e5 .5 1. -0 +0 -0.0", "1e 2", "1e+ 2", ". 1", "1 - 2", "1 + 2", "1 -e5",
+                "1\t2\r\n3\f4\n", "", "  \n", "4.9e-324 1.7976931348623157e308 2e-400 1e400 -1e400"));
+        Random random = new Random(11);
+        for (int it = 0; it < ITERATIONS; it++) {
+            StringBuilder sb = new StringBuilder();
+            int tokens = random.nextInt(20);
+            for (int i = 0; i < tokens; i++) {
+                sb.append((i % 7 == 6) ? "\n" : " ");
+                sb.append((random.nextInt(20) == 0) ? "x" : decimal(random));
+            }
+            inputs.add(sb.toString());
+        }
+
+        for (String input : inputs) {
+            byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+            List<Double> expected = new ArrayList<>();
+            try (Scanner in = new Scanner(new ByteArrayInputStream(bytes), "UTF-8")) {
+                in.useLocale(Locale.US);
+                while (in.hasNextDouble())
+                    expected.add(in.nextDouble());
+            }
+            List<Double> actual = new ArrayList<>();
+            try (NumberScanner in = new NumberScanner(new ByteArrayInputStream(bytes))) {
+                while (in.hasNextDouble())
+                    actual.add(in.nextDouble());
+            }
+            // Double.equals compares the bits, so -0.0 and 0.0 differ and NaN equals NaN
+            if (!actual.equals(expected)) {
+                fail("parse stream", 0, bytes.length, "\"" + input + "\": " + actual + " instead of " + expected);
+                return;
+            }
+        }
+        pass("parse streams");
+    }
+
+    /**
+     * Column selection of {@link CSVFileReader}: a non-ASCII header is skipped, a missing column is an error.
+     */
+    private static void checkCsv() throws Exception {
+        String[][] cases = {
+                { "csv:2", "temp\u00e9rature,1\n5,2\n6,3\n", "[1.0, 2.0, 3.0]" },
+                { "csv:1", "1,a\n\n2,b\n", "[1.0, 2.0]" },
+                { "csv:2", "1,2\n3\n4,5\n", null },
+                { "csv:2", "1,2\n3,\n", null },
+                { "csv:3", "1,2\n3,4\n", null },
+                { "csv", "a,1\n", null },
+                { "csv", "1,2\n3\n", "[1.0, 2.0, 3.0]" } };
+        File file = File.createTempFile("check", ".csv");
+        try {
+            for (String[] c : cases) {
+                try (OutputStream out = new FileOutputStream(file)) {
+                    out.write(c[1].getBytes(StandardCharsets.UTF_8));
+                }
+                String actual;
+                try {
+                    actual = Arrays.toString(DataReaderFactory.newInstance(c[0], file.getPath()).read());
+                } catch (IOException e) {
+                    actual = null;
+                }
+                if (!Objects.equals(actual, c[2])) {
+                    fail("parse csv", 0, c[1].length(), c[0] + " \"" + c[1].replace("\n", "\\n") + "\": "
+                            + ((actual == null) ? "error" : actual) + " instead of " + ((c[2] == null) ? "error" : c[2]));
+                    return;
+                }
+            }
+        } finally {
+            file.delete();
+        }
+        pass("parse csv");
+    }
+
+    private static void pass(String check) {
+        System.out.println("ok   " + check);
+    }
+
+    private static void fail(String check, int mode, int size, String message) {
+        failures++;
+        System.out.println("FAIL " + check + " (mode " + mode + ", " + size + " values): " + message);
+    }
+}
@@ -1,10 +1,104 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.zip.CRC32;
 import javax.xml.parsers.*;
+import javax.xml.stream.*;
 import org.w3c.dom.*;
 
 public interface DataReader {
     double[] read() throws Exception;
+
+    /**
+     * Open the input to read it block by block.
+     * By default the whole input is read at once and served from memory.
+     */
+    default ValueSource open() throws Exception {
+        return ValueSource.of(read());
+    }
+}
+
+/**
+ * Values of an input read block by block.
+ */
+interface ValueSource extends Closeable {
+    /**
+     * @return the number of values read into <code>buf</code>, or -1 at the end of the input
+     */
+    int read(double[] buf, int off, int len) throws IOException;
+
+    /**
+     * Fill <code>buf</code> as far as the input allows.
+     * @return the number of values read, less than the length of <code>buf</code> only at the end of the input
+     */
+    default int readFully(double[] buf) throws IOException {
+        int n = 0;
+        while (n < buf.length) {
+            int r = read(buf, n, buf.length - n);
+            if (r < 0)
+                break;
+            n += r;
+        }
+        return n;
+    }
+
+    static ValueSource of(double[] array) {
+        return new ValueSource() {
+            private int pos;
+
+            @Override
+            public int read(double[] buf, int off, int len) {
+                if (pos == array.length)
+                    return -1;
+                int n = Math.min(len, array.length - pos);
+                System.arraycopy(array, pos, buf, off, n);
+                pos += n;
+                return n;
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    static double[] readAll(ValueSource source) throws IOException {
+        try (ValueSource in = source) {
+            DoubleArray array = new DoubleArray();
+            double[] buf = new double[4096];
+            int n;
+            while ((n = in.read(buf, 0, buf.length)) >= 0)
+                array.addAll(buf, 0, n);
+            return array.toArray();
+        }
+    }
+}
+
+/**
+ * Reads values with <code>Scanner.nextDouble</code> until the first token that is not a number.
+ */
+class ScannerSource implements ValueSource {
+    private final Scanner in;
+
+    public ScannerSource(Scanner in) {
+        this.in = in;
+    }
+
+    @Override
+    public int read(double[] buf, int off, int len) {
+        int n = 0;
+        while (n < len && in.hasNextDouble())
+            buf[off + n++] = in.nextDouble();
+        return (n == 0 && len > 0) ? -1 : n;
+    }
+
+    @Override
+    public void close() {
+        in.close();
+    }
 }
 
 class FileReader implements DataReader {
@@ -28,6 +122,11 @@ class FileReader implements DataReader {
             return array;
         }
     }
+
+    @Override
+    public ValueSource open() throws Exception {
+        return new ScannerSource(new Scanner(file));
+    }
 }
 
 class StdinReader implements DataReader {
@@ -45,24 +144,91 @@ class StdinReader implements DataReader {
             return array;
         }
     }
+
+    @Override
+    public ValueSource open() {
+        return new ScannerSource(new Scanner(System.in));
+    }
 }
 
 class CSVFileReader extends FileReader implements DataReader {
+    private final int column;
+
     public CSVFileReader(File file) {
+        this(file, 0);
+    }
+
+    /**
+     * @param column the 1-based column to read, or 0 to read every column of every row.
+     *               Reading fails on a row that has fields but none in this column, and on fields that are not numbers.
+     */
+    public CSVFileReader(File file, int column) {
         super(file);
+        if (column < 0)
+            throw new IllegalArgumentException("Illegal column: " + column);
+        this.column = column;
     }
 
     @Override
     public double[] read() throws Exception {
-        try (Scanner in = new Scanner(file)) {
-            String[] sa = in.nextLine().split(",");
+        return ValueSource.readAll(open());
+    }
 
-            double[] array = new double[sa.length];
-            for (int i = 0; i <sa.length; i++)
-                array[i] = Double.parseDouble(sa[i].trim());
+    @Override
+    public ValueSource open() throws Exception {
+        NumberScanner in = new NumberScanner(new FileInputStream(file), ',');
+        return new ValueSource() {
+            private int line = -1;
+            private boolean found = true;
 
-            return array;
-        }
+            @Override
+            public int read(double[] buf, int off, int len) throws IOException {
+                int n = 0;
+                while (n < len && in.hasNext()) {
+                    if (column == 0) {
+                        buf[off + n++] = next();
+                        continue;
+                    }
+                    if (in.getLine() != line) {
+                        checkRow();
+                        line = in.getLine();
+                        found = false;
+                    }
+                    if (in.getColumn() == column - 1) {
+                        buf[off + n++] = next();
+                        found = true;
+                    } else {
+                        in.skip();
+                    }
+                }
+                if (n == 0 && len > 0) {
+                    checkRow();
+                    return -1;
+                }
+                return n;
+            }
+
+            private double next() throws IOException {
+                try {
+                    return in.nextDouble();
+                } catch (NumberFormatException e) {
+                    throw new IOException(file + ":" + (in.getLine() + 1) + ": " + e.getMessage());
+                }
+            }
+
+            /**
+             * Every row with a field must have the selected column.
+             */
+            private void checkRow() throws IOException {
+                if (!found)
+                    throw new IOException(file + ":" + (line + 1) + ": no value in column " + column);
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
     }
 }
 
@@ -97,11 +263,542 @@ class XMLFileReader extends FileReader implements DataReader {
             array[i] = list.get(i);
         return array;
     }
+
+    @Override
+    public ValueSource open() throws Exception {
+        return ValueSource.of(read());
+    }
+}
+
+/**
+ * Reads the XML format of {@link XMLFileReader} with a streaming parser, in constant memory
+ * apart from the result.
+ */
+class StAXFileReader extends FileReader implements DataReader {
+    public StAXFileReader(File file) {
+        super(file);
+    }
+
+    @Override
+    public double[] read() throws Exception {
+        return ValueSource.readAll(open());
+    }
+
+    @Override
+    public ValueSource open() throws Exception {
+        InputStream is = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+        XMLStreamReader in;
+        try {
+            in = XMLInputFactory.newInstance().createXMLStreamReader(is);
+        } catch (XMLStreamException e) {
+            is.close();
+            throw e;
+        }
+        return new ValueSource() {
+            private int values;
+
+            @Override
+            public int read(double[] buf, int off, int len) throws IOException {
+                int n = 0;
+                try {
+                    while (n < len && in.hasNext()) {
+                        switch (in.next()) {
+                            case XMLStreamConstants.START_ELEMENT:
+                                if (in.getLocalName().equals("values"))
+                                    values++;
+                                else if (values > 0 && in.getLocalName().equals("value"))
+                                    buf[off + n++] = Double.parseDouble(in.getElementText().trim());
+                                break;
+                            case XMLStreamConstants.END_ELEMENT:
+                                if (in.getLocalName().equals("values"))
+                                    values--;
+                                break;
+                        }
+                    }
+                } catch (XMLStreamException e) {
+                    throw new IOException(file + ": " + e.getMessage(), e);
+                }
+                return (n == 0 && len > 0) ? -1 : n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    in.close();
+                } catch (XMLStreamException e) {
+                    throw new IOException(e);
+                } finally {
+                    is.close();
+                }
+            }
+        };
+    }
+}
+
+/**
+ * Reads whitespace separated numbers from the file, or from standard input if no file is given,
+ * parsing them straight from a byte buffer into a primitive array, without Scanner, regex or boxing.
+ */
+class FastFileReader extends FileReader implements DataReader {
+    public FastFileReader(File file) {
+        super(file);
+    }
+
+    @Override
+    public double[] read() throws Exception {
+        return ValueSource.readAll(open());
+    }
+
+    @Override
+    public ValueSource open() throws Exception {
+        InputStream is = (file == null) ? System.in : new FileInputStream(file);
+        NumberScanner in = new NumberScanner(is);
+        return new ValueSource() {
+            @Override
+            public int read(double[] buf, int off, int len) throws IOException {
+                int n = 0;
+                while (n < len && in.hasNextDouble())
+                    buf[off + n++] = in.nextDouble();
+                return (n == 0 && len > 0) ? -1 : n;
+            }
+
+            @Override
+            public void close() throws IOException {
+                in.close();
+            }
+        };
+    }
+}
+
+/**
+ * Reads the binary format of {@link BinaryFileWriter} through a direct buffer
+ * and verifies its checksum.
+ */
+class BinaryFileReader extends FileReader implements DataReader {
+    public BinaryFileReader(File file) {
+        super(file);
+    }
+
+    @Override
+    public double[] read() throws Exception {
+        try (Source in = new Source(file, BinaryFileWriter.BUFFER_SIZE)) {
+            if (in.count > Integer.MAX_VALUE - 8)
+                throw new IOException(file + ": " + in.count + " values do not fit in an array, open() streams them");
+            double[] array = new double[(int) in.count];
+            if (in.readFully(array) != array.length)
+                throw new EOFException(file + ": unexpected end of file");
+            in.read(array, 0, 0);
+            return array;
+        }
+    }
+
+    @Override
+    public ValueSource open() throws Exception {
+        return new Source(file, BinaryFileWriter.BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize the size in bytes of the direct buffer to read through
+     */
+    public ValueSource open(int bufferSize) throws IOException {
+        return new Source(file, bufferSize);
+    }
+
+    private static class Source implements ValueSource {
+        private final File file;
+        private final FileChannel channel;
+        private final ByteBuffer buf;
+        private final CRC32 crc = new CRC32();
+        private final long count;
+        private final long checksum;
+        private long remaining;
+
+        Source(File file, int bufferSize) throws IOException {
+            this.file = file;
+            channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+            try {
+                ByteBuffer header = ByteBuffer.allocate(BinaryFileWriter.HEADER_SIZE);
+                while (header.hasRemaining())
+                    if (channel.read(header) < 0)
+                        throw new IOException(file + ": not a binary data file");
+                header.flip();
+                if (header.getInt() != BinaryFileWriter.MAGIC)
+                    throw new IOException(file + ": not a binary data file");
+                ByteOrder order = (header.get() == 0) ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN;
+                header.position(header.position() + 3);
+                count = header.getLong();
+                checksum = header.getLong();
+                // the count is only bounded by the file size: merged runs of an external sort may exceed an array
+                if (count < 0 || count > (Long.MAX_VALUE - BinaryFileWriter.HEADER_SIZE) / 8
+                        || channel.size() != BinaryFileWriter.HEADER_SIZE + count * 8)
+                    throw new IOException(file + ": corrupted header");
+                remaining = count;
+                buf = (bufferSize == BinaryFileWriter.BUFFER_SIZE)
+                        ? BufferPool.DIRECT.acquire().order(order)
+                        : ByteBuffer.allocateDirect(Math.max(8, bufferSize & ~7)).order(order);
+            } catch (IOException e) {
+                channel.close();
+                throw e;
+            }
+        }
+
+        /**
+         * The checksum is verified when the end of the values is reached.
+         */
+        @Override
+        public int read(double[] array, int off, int len) throws IOException {
+            if (remaining == 0) {
+                if (crc.getValue() != checksum)
+                    throw new IOException(file + ": checksum mismatch");
+                return (len == 0) ? 0 : -1;
+            }
+            int n = (int) Math.min(Math.min(len, remaining), buf.capacity() / 8);
+            buf.clear();
+            buf.limit(n * 8);
+            while (buf.hasRemaining())
+                if (channel.read(buf) < 0)
+                    throw new EOFException(file + ": unexpected end of file");
+            buf.flip();
+            buf.asDoubleBuffer().get(array, off, n);
+            crc.update(buf);
+            remaining -= n;
+            return n;
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+            if (buf.capacity() == BinaryFileWriter.BUFFER_SIZE)
+                BufferPool.DIRECT.release(buf);
+        }
+    }
+}
+
+/**
+ * A growable array of primitive doubles.
+ */
+class DoubleArray {
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    private double[] array;
+    private int size;
+
+    public DoubleArray() {
+        this(1024);
+    }
+
+    public DoubleArray(int capacity) {
+        array = new double[Math.max(capacity, 16)];
+    }
+
+    public void add(double value) {
+        if (size == array.length)
+            grow();
+        array[size++] = value;
+    }
+
+    public void addAll(double[] values, int off, int len) {
+        if (array.length - size < len)
+            grow(len);
+        System.arraycopy(values, off, array, size, len);
+        size += len;
+    }
+
+    public double get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return array[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    public double[] toArray() {
+        return (size == array.length) ? array : Arrays.copyOf(array, size);
+    }
+
+    private void grow() {
+        grow(1);
+    }
+
+    private void grow(int extra) {
+        if (MAX_CAPACITY - size < extra)
+            throw new OutOfMemoryError("Array size exceeds the maximum");
+        long capacity = Math.max((long) array.length + (array.length >> 1), (long) size + extra);
+        array = Arrays.copyOf(array, (int) Math.min(capacity, MAX_CAPACITY));
+    }
+}
+
+/**
+ * Parses numbers from a byte stream, like <code>Scanner.hasNextDouble</code> / <code>nextDouble</code>
+ * but without regular expressions and intermediate strings.
+ * Tokens are separated by whitespace and by an optional delimiter.
+ * Scanning stops at the first token that is not a number.
+ */
+class NumberScanner implements Closeable {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0] = 1;
+        for (int i = 1; i < POW10.length; i++)
+            POW10[i] = POW10[i - 1] * 10;
+    }
+
+    private final InputStream in;
+    private final int delimiter;
+    private static final BufferPool<byte[]> BUFFERS = new BufferPool<>(() -> new byte[BUFFER_SIZE]);
+
+    private byte[] buf = BUFFERS.acquire();
+    private int pos;
+    private int limit;
+
+    private byte[] token = new byte[64];
+    private int tokenLength;
+    private int column;
+    private int line;
+    private boolean hasValue;
+    private double value;
+
+    public NumberScanner(InputStream in) {
+        this(in, -1);
+    }
+
+    public NumberScanner(InputStream in, int delimiter) {
+        this.in = in;
+        this.delimiter = delimiter;
+    }
+
+    /**
+     * @return true if there is another token, a number or not
+     */
+    public boolean hasNext() throws IOException {
+        return readToken();
+    }
+
+    public boolean hasNextDouble() throws IOException {
+        if (hasValue)
+            return true;
+        if (!readToken())
+            return false;
+        try {
+            value = parse(token, tokenLength);
+            hasValue = true;
+        } catch (NumberFormatException e) {
+            hasValue = false;
+        }
+        return hasValue;
+    }
+
+    /**
+     * @throws NumberFormatException if the next token is not a number
+     */
+    public double nextDouble() throws IOException {
+        if (!hasValue) {
+            if (!readToken())
+                throw new NoSuchElementException();
+            value = parse(token, tokenLength);
+        }
+        skip();
+        return value;
+    }
+
+    /**
+     * Drop the next token without parsing it.
+     */
+    public void skip() throws IOException {
+        readToken();
+        hasValue = false;
+        tokenLength = 0;
+    }
+
+    /**
+     * @return the number of delimiters between the start of the line and the next token
+     */
+    public int getColumn() throws IOException {
+        readToken();
+        return column;
+    }
+
+    /**
+     * @return the number of line feeds before the next token
+     */
+    public int getLine() throws IOException {
+        readToken();
+        return line;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+        if (buf != null) {
+            BUFFERS.release(buf);
+            buf = null;
+        }
+    }
+
+    private boolean readToken() throws IOException {
+        if (tokenLength > 0)
+            return true;
+        int b;
+        while ((b = read()) >= 0 && isSeparator(b)) {
+            if (b == '\n') {
+                column = 0;
+                line++;
+            }
+            else if (b == delimiter)
+                column++;
+        }
+        while (b >= 0 && !isSeparator(b)) {
+            if (tokenLength == token.length)
+                token = Arrays.copyOf(token, tokenLength * 2);
+            token[tokenLength++] = (byte) b;
+            b = read();
+        }
+        if (b >= 0)
+            pos--; // keep the separator for the column count of the next token
+        return tokenLength > 0;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit) {
+            limit = in.read(buf, 0, buf.length);
+            pos = 0;
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buf[pos++] & 0xff;
+    }
+
+    private boolean isSeparator(int b) {
+        return b == delimiter || b == ' ' || b == '\n' || b == '\r' || b == '\t' || b == '\f';
+    }
+
+    /**
+     * Decimal numbers whose mantissa fits in 53 bits and whose exponent is within 22
+     * are converted exactly with a single multiplication or division;
+     * other decimal numbers fall back to <code>Double.parseDouble</code>.
+     * Only the numbers <code>Scanner.nextDouble</code> reads are accepted: decimal numbers, NaN, Infinity and
+     * hexadecimal numbers with a point and an exponent, such as 0x1.8p1. The 'd' and 'f' suffixes of
+     * <code>Double.parseDouble</code> and its other hexadecimal forms, such as 0x1p3, are not.
+     */
+    static double parse(byte[] t, int len) throws NumberFormatException {
+        int i = 0;
+        boolean negative = false;
+        if (len > 0 && (t[0] == '-' || t[0] == '+')) {
+            negative = t[0] == '-';
+            i++;
+        }
+
+        long mantissa = 0;
+        int exponent = 0;
+        int digits = 0;
+        boolean exact = true;
+        boolean any = false;
+        for (; i < len && t[i] >= '0' && t[i] <= '9'; i++, any = true) {
+            if (digits < 18) {
+                mantissa = mantissa * 10 + (t[i] - '0');
+                if (mantissa != 0)
+                    digits++;
+            } else {
+                exact &= t[i] == '0';
+                exponent++;
+            }
+        }
+        if (i < len && t[i] == '.') {
+            for (i++; i < len && t[i] >= '0' && t[i] <= '9'; i++, any = true) {
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (t[i] - '0');
+                    if (mantissa != 0)
+                        digits++;
+                    exponent--;
+                } else {
+                    exact &= t[i] == '0';
+                }
+            }
+        }
+        if (any && i < len && (t[i] == 'e' || t[i] == 'E')) {
+            int j = i + 1;
+            boolean negativeExp = false;
+            if (j < len && (t[j] == '-' || t[j] == '+')) {
+                negativeExp = t[j] == '-';
+                j++;
+            }
+            int e = 0;
+            int start = j;
+            for (; j < len && t[j] >= '0' && t[j] <= '9'; j++)
+                e = Math.min(e * 10 + (t[j] - '0'), 100000);
+            if (j > start) {
+                exponent += negativeExp ? -e : e;
+                i = j;
+            }
+        }
+
+        if (!any || i != len) {
+            int sign = (len > 0 && (t[0] == '-' || t[0] == '+')) ? 1 : 0;
+            String name = new String(t, sign, len - sign, StandardCharsets.US_ASCII);
+            if (!name.equals("NaN") && !name.equals("Infinity") && !isHexFloat(t, sign, len))
+                throw new NumberFormatException("For input string: \"" + new String(t, 0, len, StandardCharsets.UTF_8) + "\"");
+            return Double.parseDouble(new String(t, 0, len, StandardCharsets.US_ASCII));
+        }
+        if (!exact)
+            return Double.parseDouble(new String(t, 0, len, StandardCharsets.US_ASCII));
+
+        double d;
+        if (mantissa == 0)
+            d = 0.0;
+        else if (mantissa < (1L << 53) && exponent >= -22 && exponent <= 22)
+            d = (exponent < 0) ? mantissa / POW10[-exponent] : mantissa * POW10[exponent];
+        else
+            return Double.parseDouble(new String(t, 0, len, StandardCharsets.US_ASCII));
+        return negative ? -d : d;
+    }
+
+    /**
+     * @return whether the token from <code>start</code> is a hexadecimal number with a point and an exponent
+     */
+    private static boolean isHexFloat(byte[] t, int start, int len) {
+        int i = start;
+        if (i + 1 >= len || t[i] != '0' || (t[i + 1] != 'x' && t[i + 1] != 'X'))
+            return false;
+        i += 2;
+        while (i < len && Character.digit(t[i], 16) >= 0)
+            i++;
+        if (i == len || t[i++] != '.')
+            return false;
+        int digits = i;
+        while (i < len && Character.digit(t[i], 16) >= 0)
+            i++;
+        if (i == digits || i == len || (t[i] != 'p' && t[i] != 'P'))
+            return false;
+        if (++i < len && (t[i] == '-' || t[i] == '+'))
+            i++;
+        digits = i;
+        while (i < len && t[i] >= '0' && t[i] <= '9')
+            i++;
+        return i > digits && i == len;
+    }
 }
 
 class DataReaderFactory {
+    /**
+     * @param type reader type, optionally followed by ':' and an option, e.g. "csv:2" to read the second column
+     */
     public static DataReader newInstance(String type, String fileName) throws IllegalArgumentException {
         File file = fileName.equals("-") ? null : new File(fileName);
+        String option = null;
+        if (type.contains(":")) {
+            option = type.substring(type.indexOf(':') + 1);
+            type = type.substring(0, type.indexOf(':'));
+        }
+
         DataReader reader = null;
         switch (type) {
             case "plain":
@@ -111,11 +808,20 @@ class DataReaderFactory {
                 reader = new StdinReader();
                 break;
             case "csv":
-                reader = new CSVFileReader(file);
+                reader = (option == null) ? new CSVFileReader(file) : new CSVFileReader(file, Integer.parseInt(option));
                 break;
             case "xml":
                 reader = new XMLFileReader(file);
                 break;
+            case "fast":
+                reader = new FastFileReader(file);
+                break;
+            case "stax":
+                reader = new StAXFileReader(file);
+                break;
+            case "binary":
+                reader = new BinaryFileReader(file);
+                break;
             default:
                 throw new IllegalArgumentException("Unresolved reader type: " + type);
         }
@@ -1,6 +1,12 @@
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.zip.CRC32;
 import javax.xml.parsers.*;
+import javax.xml.stream.*;
 import javax.xml.transform.*;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
@@ -9,6 +15,49 @@ import org.w3c.dom.*;
 
 public interface DataWriter {
     void write(double[] array) throws Exception;
+
+    /**
+     * Open the output to write it block by block, the output is complete once the sink is closed.
+     * By default the values are collected in memory and written at once on close.
+     */
+    default ValueSink open() throws Exception {
+        return new ArraySink(this);
+    }
+}
+
+/**
+ * Values of an output written block by block.
+ */
+interface ValueSink extends Closeable {
+    void write(double[] buf, int off, int len) throws IOException;
+}
+
+/**
+ * Collects the values in memory and hands them to a writer on close.
+ */
+class ArraySink implements ValueSink {
+    private final DataWriter writer;
+    private final DoubleArray array = new DoubleArray();
+
+    public ArraySink(DataWriter writer) {
+        this.writer = writer;
+    }
+
+    @Override
+    public void write(double[] buf, int off, int len) {
+        array.addAll(buf, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            writer.write(array.toArray());
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
 }
 
 class FileWriter implements DataWriter {
@@ -19,9 +68,85 @@ class FileWriter implements DataWriter {
     }
 
     public void write(double[] array) throws Exception {
-        try (PrintWriter out = new PrintWriter(file)) {
-            for (int i = 0; i < array.length; i++)
-                out.println(array[i]);
+        try (ValueSink out = open()) {
+            out.write(array, 0, array.length);
+        }
+    }
+
+    @Override
+    public ValueSink open() throws Exception {
+        String lineSeparator = System.lineSeparator();
+        BlockWriter out = new BlockWriter(file);
+        return new ValueSink() {
+            @Override
+            public void write(double[] buf, int off, int len) throws IOException {
+                for (int i = off; i < off + len; i++) {
+                    out.append(buf[i]);
+                    out.append(lineSeparator);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
+    }
+}
+
+/**
+ * Formats values into a reusable buffer and writes it to the file in large blocks,
+ * so no object is allocated per value.
+ * Values are formatted as by <code>Double.toString</code>, in the default charset as <code>PrintWriter</code> does.
+ */
+class BlockWriter implements Closeable {
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private static final BufferPool<StringBuilder> BUILDERS = new BufferPool<>(() -> new StringBuilder(BLOCK_SIZE + 64));
+    private static final BufferPool<char[]> CHARS = new BufferPool<>(() -> new char[BLOCK_SIZE + 64]);
+
+    private final Writer out;
+    private StringBuilder sb = BUILDERS.acquire();
+    private char[] chars = CHARS.acquire();
+
+    public BlockWriter(File file) throws IOException {
+        out = new OutputStreamWriter(new FileOutputStream(file));
+    }
+
+    public void append(double value) throws IOException {
+        sb.append(value);
+        if (sb.length() >= BLOCK_SIZE)
+            flushBlock();
+    }
+
+    public void append(String s) throws IOException {
+        sb.append(s);
+        if (sb.length() >= BLOCK_SIZE)
+            flushBlock();
+    }
+
+    private void flushBlock() throws IOException {
+        int len = sb.length();
+        if (len > chars.length)
+            chars = new char[len];
+        sb.getChars(0, len, chars, 0);
+        out.write(chars, 0, len);
+        sb.setLength(0);
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (sb == null)
+            return;
+        try {
+            flushBlock();
+        } finally {
+            out.close();
+            sb.setLength(0);
+            BUILDERS.release(sb);
+            CHARS.release(chars);
+            sb = null;
+            chars = null;
         }
     }
 }
@@ -38,15 +163,26 @@ class CSVFileWriter extends FileWriter implements DataWriter {
     }
 
     @Override
-    public void write(double[] array) throws Exception {
-        try (PrintWriter out = new PrintWriter(file)) {
-            StringBuilder sb = new StringBuilder();
-            int iMax = array.length-1;
-            for (int i = 0; i < iMax; i++)
-                sb.append(array[i] + ", ");
-            sb.append(array[iMax]);
-            out.print(sb.toString());
-        }
+    public ValueSink open() throws Exception {
+        BlockWriter out = new BlockWriter(file);
+        return new ValueSink() {
+            private boolean first = true;
+
+            @Override
+            public void write(double[] buf, int off, int len) throws IOException {
+                for (int i = off; i < off + len; i++) {
+                    if (!first)
+                        out.append(", ");
+                    out.append(buf[i]);
+                    first = false;
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                out.close();
+            }
+        };
     }
 }
 
@@ -82,6 +218,143 @@ class XMLFileWriter extends FileWriter implements DataWriter {
         StreamResult stream = new StreamResult(new FileOutputStream(file));
         transformer.transform(source, stream);
     }
+
+    @Override
+    public ValueSink open() throws Exception {
+        return new ArraySink(this);
+    }
+}
+
+/**
+ * Writes the XML format of {@link XMLFileWriter} with a streaming writer, in constant memory.
+ */
+class StAXFileWriter extends FileWriter implements DataWriter {
+    public StAXFileWriter(File file) {
+        super(file);
+    }
+
+    @Override
+    public ValueSink open() throws Exception {
+        Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"), 1 << 16);
+        XMLStreamWriter out;
+        try {
+            out = XMLOutputFactory.newInstance().createXMLStreamWriter(w);
+            out.writeStartDocument("UTF-8", "1.0");
+            out.writeCharacters("\n");
+            out.writeStartElement("root");
+            out.writeCharacters("\n    ");
+            out.writeStartElement("values");
+        } catch (XMLStreamException e) {
+            w.close();
+            throw e;
+        }
+        return new ValueSink() {
+            @Override
+            public void write(double[] buf, int off, int len) throws IOException {
+                try {
+                    for (int i = off; i < off + len; i++) {
+                        out.writeCharacters("\n        ");
+                        out.writeStartElement("value");
+                        out.writeCharacters(Double.toString(buf[i]));
+                        out.writeEndElement();
+                    }
+                } catch (XMLStreamException e) {
+                    throw new IOException(e);
+                }
+            }
+
+            @Override
+            public void close() throws IOException {
+                try {
+                    out.writeCharacters("\n    ");
+                    out.writeEndElement();
+                    out.writeCharacters("\n");
+                    out.writeEndElement();
+                    out.writeCharacters("\n");
+                    out.writeEndDocument();
+                    out.close();
+                } catch (XMLStreamException e) {
+                    throw new IOException(e);
+                } finally {
+                    w.close();
+                }
+            }
+        };
+    }
+}
+
+/**
+ * Writes the binary format: a header of {@link #HEADER_SIZE} bytes followed by the raw IEEE-754 values.
+ * The header holds the magic number, the byte order of the values, their count and the CRC32 of the value bytes.
+ * Values are written in native byte order through a direct buffer.
+ */
+class BinaryFileWriter extends FileWriter implements DataWriter {
+    public static final int MAGIC = 0x44424C31;
+    public static final int HEADER_SIZE = 24;
+    public static final int BUFFER_SIZE = 1 << 20;
+
+    public BinaryFileWriter(File file) {
+        super(file);
+    }
+
+    @Override
+    public ValueSink open() throws Exception {
+        return open(BUFFER_SIZE);
+    }
+
+    /**
+     * @param bufferSize the size in bytes of the direct buffer to write through
+     */
+    public ValueSink open(int bufferSize) throws IOException {
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        channel.position(HEADER_SIZE);
+        ByteBuffer buf = (bufferSize == BUFFER_SIZE)
+                ? BufferPool.DIRECT.acquire().order(ByteOrder.nativeOrder())
+                : ByteBuffer.allocateDirect(Math.max(8, bufferSize & ~7)).order(ByteOrder.nativeOrder());
+        return new ValueSink() {
+            private final CRC32 crc = new CRC32();
+            private long count;
+
+            @Override
+            public void write(double[] array, int off, int len) throws IOException {
+                for (int i = off; i < off + len; ) {
+                    int n = Math.min(off + len - i, buf.capacity() / 8);
+                    buf.clear();
+                    buf.asDoubleBuffer().put(array, i, n);
+                    buf.limit(n * 8);
+                    crc.update(buf);
+                    buf.flip();
+                    while (buf.hasRemaining())
+                        channel.write(buf);
+                    i += n;
+                }
+                count += len;
+            }
+
+            /**
+             * The header is written last, once the count and the checksum are known.
+             */
+            @Override
+            public void close() throws IOException {
+                try {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+                    header.putInt(MAGIC);
+                    header.put((byte) (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN ? 0 : 1));
+                    header.put(new byte[3]);
+                    header.putLong(count);
+                    header.putLong(crc.getValue());
+                    header.flip();
+                    while (header.hasRemaining())
+                        channel.write(header, header.position());
+                } finally {
+                    channel.close();
+                    if (buf.capacity() == BUFFER_SIZE)
+                        BufferPool.DIRECT.release(buf);
+                }
+            }
+        };
+    }
 }
 
 class DataWriterFactory {
@@ -101,6 +374,12 @@ class DataWriterFactory {
             case "xml":
                 writer = new XMLFileWriter(file);
                 break;
+            case "stax":
+                writer = new StAXFileWriter(file);
+                break;
+            case "binary":
+                writer = new BinaryFileWriter(file);
+                break;
             default:
                 throw new IllegalArgumentException("Unresolved writer type: " + type);
         }
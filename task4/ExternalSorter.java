@@ -0,0 +1,213 @@
+import java.io.*;
+import java.util.*;
+
+/**
+ * Sorts inputs larger than the heap.
+ * The input is read in runs of at most <code>runSize</code> values, every run is sorted with the configured
+ * {@link Sorter} and spilled to a temporary file in the binary format, then the runs are merged with a heap
+ * straight into the output. Inputs that fit in a single run are sorted in memory without temporary files.
+ * The merge buffers share a quarter of the heap; when there are too many runs for it,
+ * the runs are first merged in groups into fewer, longer runs.
+ * The merged order is that of <code>Double.compare</code>, as for <code>Arrays.sort</code>.
+ */
+public class ExternalSorter {
+    static final int MIN_BUFFER_SIZE = 1 << 13;
+    private static final int MAX_BUFFER_SIZE = 1 << 20;
+    private static final int BLOCK_SIZE = 1 << 13;
+
+    private final Sorter sorter;
+    private final int runSize;
+    private final File tempDir;
+    private final long mergeMemory;
+
+    /**
+     * @param tempDir the directory of the run files, or <tt>null</tt> for the default temporary directory
+     */
+    public ExternalSorter(Sorter sorter, int runSize, File tempDir) {
+        this(sorter, runSize, tempDir, defaultMergeMemory());
+    }
+
+    /**
+     * @param mergeMemory the memory in bytes shared by the buffers of the runs during the merge
+     */
+    public ExternalSorter(Sorter sorter, int runSize, File tempDir, long mergeMemory) {
+        if (runSize <= 0)
+            throw new IllegalArgumentException("Illegal run size: " + runSize);
+        if (mergeMemory <= 0)
+            throw new IllegalArgumentException("Illegal merge memory: " + mergeMemory);
+        this.sorter = sorter;
+        this.runSize = runSize;
+        this.tempDir = tempDir;
+        this.mergeMemory = mergeMemory;
+    }
+
+    /**
+     * @return a run size that leaves room in the heap for the sorter's own buffers
+     */
+    public static int defaultRunSize() {
+        long values = Runtime.getRuntime().maxMemory() / 8 / 4;
+        return (int) Math.max(1 << 16, Math.min(values, Integer.MAX_VALUE - 8));
+    }
+
+    public void sort(DataReader reader, DataWriter writer) throws Exception {
+        List<File> runs = new ArrayList<>();
+        try {
+            try (ValueSource in = reader.open()) {
+                double[] run = new double[runSize];
+                int n = in.readFully(run);
+                if (n < runSize) {
+                    double[] array = Arrays.copyOf(run, n);
+                    sorter.sort(array);
+                    writer.write(array);
+                    return;
+                }
+                while (n > 0) {
+                    double[] array = (n == runSize) ? run : Arrays.copyOf(run, n);
+                    sorter.sort(array);
+                    runs.add(spill(array));
+                    n = in.readFully(run);
+                }
+            }
+            merge(runs, writer);
+        } finally {
+            for (File f : runs)
+                f.delete();
+        }
+    }
+
+    private File spill(double[] array) throws IOException {
+        File file = File.createTempFile("run", ".bin", tempDir);
+        file.deleteOnExit();
+        try (ValueSink out = new BinaryFileWriter(file).open(BinaryFileWriter.BUFFER_SIZE)) {
+            out.write(array, 0, array.length);
+        }
+        return file;
+    }
+
+    /**
+     * @return the memory, in bytes, shared by the buffers of the runs during the merge:
+     *         a quarter of the heap, as for the runs of {@link #defaultRunSize()}
+     */
+    public static long defaultMergeMemory() {
+        return Runtime.getRuntime().maxMemory() / 4;
+    }
+
+    /**
+     * Merge the runs into the output. While there are more runs than the merge memory can give
+     * buffers of {@link #MIN_BUFFER_SIZE} to, groups of runs are first merged into longer runs.
+     */
+    private void merge(List<File> runs, DataWriter writer) throws Exception {
+        // every run is read through a direct buffer and a heap array of the same size
+        int fanIn = (int) Math.max(2, Math.min(Integer.MAX_VALUE, mergeMemory / (2 * MIN_BUFFER_SIZE)));
+        while (runs.size() > fanIn) {
+            List<File> merged = new ArrayList<>();
+            try {
+                for (int i = 0; i < runs.size(); i += fanIn) {
+                    List<File> group = runs.subList(i, Math.min(i + fanIn, runs.size()));
+                    File file = File.createTempFile("run", ".bin", tempDir);
+                    file.deleteOnExit();
+                    merged.add(file);
+                    // one more buffer for the output run
+                    int bufferSize = bufferSize(group.size() + 1);
+                    try (ValueSink out = new BinaryFileWriter(file).open(bufferSize)) {
+                        merge(group, out, bufferSize);
+                    }
+                }
+            } catch (Exception | Error e) {
+                for (File f : merged)
+                    f.delete();
+                throw e;
+            }
+            for (File f : runs)
+                f.delete();
+            runs.clear();
+            runs.addAll(merged);
+        }
+
+        try (ValueSink out = writer.open()) {
+            merge(runs, out, bufferSize(runs.size()));
+        }
+    }
+
+    private int bufferSize(int runs) {
+        long size = mergeMemory / (2L * runs);
+        return (int) Math.max(MIN_BUFFER_SIZE, Math.min(MAX_BUFFER_SIZE, size)) & ~7;
+    }
+
+    private static void merge(List<File> runs, ValueSink out, int bufferSize) throws IOException {
+        List<Cursor> cursors = new ArrayList<>();
+        try {
+            for (File f : runs)
+                cursors.add(new Cursor(new BinaryFileReader(f).open(bufferSize), bufferSize / 8));
+            merge(cursors, out);
+        } finally {
+            for (Cursor c : cursors)
+                c.close();
+        }
+    }
+
+    /**
+     * Merge sorted runs with a heap into <code>out</code>, which is not closed.
+     */
+    static void merge(List<Cursor> runs, ValueSink out) throws IOException {
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> Double.compare(a.head, b.head));
+        for (Cursor c : runs)
+            if (c.next())
+                heap.add(c);
+
+        double[] block = new double[BLOCK_SIZE];
+        int n = 0;
+        while (!heap.isEmpty()) {
+            Cursor c = heap.poll();
+            block[n++] = c.head;
+            if (n == block.length) {
+                out.write(block, 0, n);
+                n = 0;
+            }
+            if (c.next())
+                heap.add(c);
+        }
+        out.write(block, 0, n);
+    }
+
+    /**
+     * A sorted run being merged, read from a source through a buffer or held in memory as a whole.
+     */
+    static class Cursor implements Closeable {
+        private final ValueSource in;
+        private final double[] buf;
+        private int pos;
+        private int len;
+        double head;
+
+        Cursor(ValueSource in, int size) {
+            this.in = in;
+            this.buf = new double[size];
+        }
+
+        Cursor(double[] run) {
+            this.in = null;
+            this.buf = run;
+            this.len = run.length;
+        }
+
+        boolean next() throws IOException {
+            if (pos == len) {
+                if (in == null)
+                    return false;
+                len = in.read(buf, 0, buf.length);
+                pos = 0;
+                if (len <= 0)
+                    return false;
+            }
+            head = buf[pos++];
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (in != null)
+                in.close();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Overlaps reading, sorting and writing.
+ * The calling thread reads the input in blocks and hands every block to a pool of workers that sort it
+ * with the configured {@link Sorter} while the next block is read. Once the input is read, the sorted blocks
+ * are merged with a heap and the merged values are passed to a writer thread, so formatting and writing
+ * the output runs alongside the merge.
+ * The time spent in every stage is kept and can be printed with {@link #printTimes(PrintStream)}.
+ */
+public class PipelinedSorter {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20;
+
+    /**
+     * Number of merged blocks waiting for the writer thread.
+     */
+    private static final int QUEUE_SIZE = 16;
+
+    private final Sorter sorter;
+    private final int threads;
+    private final int blockSize;
+
+    private long count;
+    private int blocks;
+    private long readTime;
+    private long sortWaitTime;
+    private final AtomicLong sortBusyTime = new AtomicLong();
+    private long mergeTime;
+    private long writeBusyTime;
+    private long totalTime;
+
+    public PipelinedSorter(Sorter sorter, int threads, int blockSize) {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Illegal number of threads: " + threads);
+        if (blockSize <= 0)
+            throw new IllegalArgumentException("Illegal block size: " + blockSize);
+        this.sorter = sorter;
+        this.threads = threads;
+        this.blockSize = blockSize;
+    }
+
+    public void sort(DataReader reader, DataWriter writer) throws Exception {
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "sort");
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<double[]>> sorted = new ArrayList<>();
+            try (ValueSource in = reader.open()) {
+                while (true) {
+                    double[] block = new double[blockSize];
+                    int n = in.readFully(block);
+                    if (n == 0)
+                        break;
+                    double[] values = (n == blockSize) ? block : Arrays.copyOf(block, n);
+                    sorted.add(pool.submit(() -> {
+                        long t = System.nanoTime();
+                        sorter.sort(values);
+                        sortBusyTime.addAndGet(System.nanoTime() - t);
+                        return values;
+                    }));
+                    count += n;
+                    if (n < blockSize)
+                        break;
+                }
+            }
+            blocks = sorted.size();
+            long t = System.nanoTime();
+            readTime = t - start;
+
+            List<ExternalSorter.Cursor> runs = new ArrayList<>();
+            for (Future<double[]> f : sorted)
+                runs.add(new ExternalSorter.Cursor(join(f)));
+            sortWaitTime = System.nanoTime() - t;
+
+            t = System.nanoTime();
+            AsyncSink out = new AsyncSink(writer.open());
+            try {
+                ExternalSorter.merge(runs, out);
+            } finally {
+                mergeTime = System.nanoTime() - t;
+                out.close();
+                writeBusyTime = out.busyTime;
+            }
+        } finally {
+            pool.shutdownNow();
+            totalTime = System.nanoTime() - start;
+        }
+    }
+
+    private static double[] join(Future<double[]> f) throws Exception {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw e;
+        }
+    }
+
+    /**
+     * Print the time spent in every stage of the last sort.
+     * Reading, sorting and writing overlap, so the stages add up to more than the total.
+     */
+    public void printTimes(PrintStream out) {
+        out.printf("read   %10.1f ms  %d values in %d blocks\n", readTime / 1e6, count, blocks);
+        out.printf("sort   %10.1f ms  busy on %d threads, %.1f ms waited after reading\n",
+                sortBusyTime.get() / 1e6, threads, sortWaitTime / 1e6);
+        out.printf("merge  %10.1f ms  including waits for the writer\n", mergeTime / 1e6);
+        out.printf("write  %10.1f ms  busy\n", writeBusyTime / 1e6);
+        out.printf("total  %10.1f ms\n", totalTime / 1e6);
+    }
+
+    /**
+     * Writes to a sink on a separate thread.
+     * Blocks are copied into a bounded queue, errors of the writer thread are thrown by the next call.
+     */
+    private static class AsyncSink implements ValueSink {
+        private static final double[] END = new double[0];
+
+        private final ValueSink sink;
+        private final BlockingQueue<double[]> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+        private final Thread thread;
+        private volatile Throwable error;
+        private volatile long busyTime;
+
+        AsyncSink(ValueSink sink) {
+            this.sink = sink;
+            thread = new Thread(this::drain, "write");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void drain() {
+            long busy = 0;
+            try {
+                try {
+                    for (double[] block = queue.take(); block != END; block = queue.take()) {
+                        long t = System.nanoTime();
+                        sink.write(block, 0, block.length);
+                        busy += System.nanoTime() - t;
+                    }
+                } finally {
+                    long t = System.nanoTime();
+                    sink.close();
+                    busyTime = busy + System.nanoTime() - t;
+                }
+            } catch (Throwable e) {
+                error = e;
+                queue.clear();
+            }
+        }
+
+        @Override
+        public void write(double[] buf, int off, int len) throws IOException {
+            if (len > 0)
+                put(Arrays.copyOfRange(buf, off, off + len));
+        }
+
+        private void put(double[] block) throws IOException {
+            try {
+                while (!queue.offer(block, 100, TimeUnit.MILLISECONDS))
+                    check();
+                check();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+        }
+
+        private void check() throws IOException {
+            Throwable e = error;
+            if (e instanceof IOException)
+                throw (IOException) e;
+            if (e != null)
+                throw new IOException(e);
+        }
+
+        /**
+         * Wait until every block is written and the sink is closed.
+         */
+        @Override
+        public void close() throws IOException {
+            if (error == null)
+                put(END);
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            }
+            check();
+        }
+    }
+}
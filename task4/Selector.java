@@ -0,0 +1,247 @@
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Selection without a full sort: the k-th smallest value, the k smallest or largest values and quantiles.
+ * Values are ordered as by <code>Double.compare</code>, as with the sorters: -0.0 before 0.0 and NaN last.
+ */
+public class Selector {
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private Selector() {}
+
+    /**
+     * Introselect: rearrange the array so that the value at <code>k</code> is the one a sort would put there,
+     * with no greater value before it and no smaller value after it.
+     * @return the k-th smallest value, counting from 0
+     */
+    public static double select(double[] array, int k) {
+        if (k < 0 || k >= array.length)
+            throw new IndexOutOfBoundsException("Index: " + k + ", Size: " + array.length);
+        int last = DoubleOrder.moveNaNsToEnd(array, 0, array.length - 1);
+        if (k > last)
+            return Double.NaN;
+        int[] ranks = { k };
+        multiSelect(array, 0, last, ranks, 0, 0, depth(last + 1));
+        orderZeros(array, last, ranks);
+        return array[k];
+    }
+
+    /**
+     * Quantiles by linear interpolation between the closest ranks, as with <code>numpy.quantile</code>.
+     * All quantiles are selected together, every partition step serving the ranks on both of its sides.
+     * NaNs are left out; the quantiles of an array without other values are NaN.
+     * The array is rearranged.
+     * @param q quantiles between 0 and 1, in any order
+     * @return the value of every quantile, in the order of <code>q</code>
+     */
+    public static double[] quantiles(double[] array, double[] q) {
+        for (double p : q)
+            if (!(p >= 0 && p <= 1))
+                throw new IllegalArgumentException("Illegal quantile: " + p);
+        double[] result = new double[q.length];
+        int last = DoubleOrder.moveNaNsToEnd(array, 0, array.length - 1);
+        if (last < 0) {
+            Arrays.fill(result, Double.NaN);
+            return result;
+        }
+
+        int[] ranks = new int[2 * q.length];
+        for (int i = 0; i < q.length; i++) {
+            double h = last * q[i];
+            ranks[2 * i] = (int) Math.floor(h);
+            ranks[2 * i + 1] = (int) Math.ceil(h);
+        }
+        int[] sorted = ranks.clone();
+        Arrays.sort(sorted);
+        multiSelect(array, 0, last, sorted, 0, sorted.length - 1, depth(last + 1));
+        orderZeros(array, last, sorted);
+
+        for (int i = 0; i < q.length; i++) {
+            double lo = array[ranks[2 * i]], hi = array[ranks[2 * i + 1]];
+            double h = last * q[i];
+            result[i] = (lo == hi) ? lo : lo + (h - Math.floor(h)) * (hi - lo);
+        }
+        return result;
+    }
+
+    /**
+     * @param largest whether to keep the largest values instead of the smallest
+     * @return the <code>k</code> smallest values in ascending order, or the largest in descending order
+     */
+    public static double[] top(double[] array, int k, boolean largest) {
+        DoubleHeap heap = new DoubleHeap(k, largest);
+        for (double v : array)
+            heap.offer(v);
+        return heap.toSortedArray();
+    }
+
+    /**
+     * Top-K of an input read block by block, in memory for <code>k</code> values only.
+     */
+    public static double[] top(ValueSource in, int k, boolean largest) throws IOException {
+        DoubleHeap heap = new DoubleHeap(k, largest);
+        double[] buf = new double[4096];
+        int n;
+        while ((n = in.read(buf, 0, buf.length)) >= 0)
+            for (int i = 0; i < n; i++)
+                heap.offer(buf[i]);
+        return heap.toSortedArray();
+    }
+
+    private static int depth(int n) {
+        return 2 * (32 - Integer.numberOfLeadingZeros(n));
+    }
+
+    /**
+     * Partition the range from <code>left</code> to <code>right</code> inclusive until every rank
+     * from <code>ranks[from]</code> to <code>ranks[to]</code>, sorted, holds its value.
+     * Ranges that are still unresolved after <code>depth</code> partitions are sorted with heapsort.
+     */
+    private static void multiSelect(double[] array, int left, int right, int[] ranks, int from, int to, int depth) {
+        while (from <= to) {
+            // skip the ranks outside of the range, the neighbouring partitions have placed them
+            while (from <= to && ranks[from] < left)
+                from++;
+            while (from <= to && ranks[to] > right)
+                to--;
+            if (from > to)
+                return;
+            if (right - left < INSERTION_SORT_THRESHOLD) {
+                IntroSorter.insertionSort(array, left, right);
+                return;
+            }
+            if (depth-- == 0) {
+                IntroSorter.heapSort(array, left, right);
+                return;
+            }
+
+            // median of three as pivot, then a three-way partition so that duplicates end the search
+            int mid = (left + right) >>> 1;
+            if (array[mid] < array[left])
+                IntroSorter.swap(array, mid, left);
+            if (array[right] < array[mid]) {
+                IntroSorter.swap(array, right, mid);
+                if (array[mid] < array[left])
+                    IntroSorter.swap(array, mid, left);
+            }
+            double pivot = array[mid];
+            int lt = left, i = left, gt = right;
+            while (i <= gt) {
+                if (array[i] < pivot)
+                    IntroSorter.swap(array, lt++, i++);
+                else if (array[i] > pivot)
+                    IntroSorter.swap(array, i, gt--);
+                else
+                    i++;
+            }
+
+            // ranks before the pivots go left, ranks after them are handled by the loop
+            int split = from;
+            while (split <= to && ranks[split] < lt)
+                split++;
+            if (split > from)
+                multiSelect(array, left, lt - 1, ranks, from, split - 1, depth);
+            from = split;
+            left = gt + 1;
+        }
+    }
+
+    /**
+     * Give the zeros their sign when a zero was selected: selection with the comparison operators
+     * does not tell -0.0 from 0.0. The negative zeros are moved to the first positions holding a zero,
+     * which keeps the partition around every selected rank.
+     */
+    private static void orderZeros(double[] array, int last, int[] ranks) {
+        boolean zero = false;
+        for (int r : ranks)
+            zero |= array[r] == 0.0;
+        if (!zero)
+            return;
+        int negative = 0;
+        for (int i = 0; i <= last; i++)
+            if (array[i] == 0.0 && Double.doubleToRawLongBits(array[i]) < 0)
+                negative++;
+        for (int i = 0; i <= last; i++)
+            if (array[i] == 0.0)
+                array[i] = (negative-- > 0) ? -0.0 : 0.0;
+    }
+}
+
+/**
+ * A bounded heap of primitive doubles that keeps the smallest (or the largest) values offered to it.
+ * Values that cannot enter cost a single comparison with the root.
+ */
+class DoubleHeap {
+    private final double[] heap;
+    private final int sign;
+    private int size;
+
+    /**
+     * @param largest whether to keep the largest values instead of the smallest
+     */
+    public DoubleHeap(int capacity, boolean largest) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        heap = new double[capacity];
+        sign = largest ? -1 : 1;
+    }
+
+    public void offer(double value) {
+        if (size < heap.length) {
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (compare(heap[parent], value) >= 0)
+                    break;
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = value;
+        } else if (size > 0 && compare(value, heap[0]) < 0) {
+            siftDown(value, size);
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the values kept, smallest first, or largest first if the heap keeps the largest
+     */
+    public double[] toSortedArray() {
+        double[] saved = Arrays.copyOf(heap, size);
+        double[] result = new double[size];
+        for (int n = size; n > 0; n--) {
+            result[n - 1] = heap[0];
+            siftDown(heap[n - 1], n - 1);
+        }
+        System.arraycopy(saved, 0, heap, 0, size);
+        return result;
+    }
+
+    /**
+     * Put <code>value</code> in place of the root of a heap of <code>n</code> values.
+     */
+    private void siftDown(double value, int n) {
+        int i = 0;
+        for (int child = 1; child < n; child = 2 * i + 1) {
+            if (child + 1 < n && compare(heap[child + 1], heap[child]) > 0)
+                child++;
+            if (compare(heap[child], value) <= 0)
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        if (n > 0)
+            heap[i] = value;
+    }
+
+    /**
+     * The root is the greatest value for this order: the largest kept value, or the smallest one.
+     */
+    private int compare(double a, double b) {
+        return sign * Double.compare(a, b);
+    }
+}
@@ -1,3 +1,9 @@
+import java.io.PrintStream;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
 public interface Sorter {
     void sort(double[] array);
 }
@@ -12,10 +18,10 @@ class QuickSorter implements Sorter {
     }
 
     public void sort(double[] array) {
-        quickSort(array, 0, array.length-1);
+        quickSort(array, 0, array.length-1, 0, SortMetrics.current());
     }
 
-    private void quickSort(double[] array, int left, int right) {
+    private void quickSort(double[] array, int left, int right, int level, SortMetrics metrics) {
         if (left >= right)
             return;
 
@@ -27,9 +33,14 @@ class QuickSorter implements Sorter {
                 swap(array, ++last, i);
 
         swap(array, left, last);
+        if (metrics != null) {
+            metrics.reach(level);
+            metrics.comparisons.add(right - left);
+            metrics.swaps.add(last - left + 2);
+        }
 
-        quickSort(array, left, last-1);
-        quickSort(array, last+1, right);
+        quickSort(array, left, last-1, level + 1, metrics);
+        quickSort(array, last+1, right, level + 1, metrics);
     }
 
     public static void swap(double[] array, int i, int j) {
@@ -49,10 +60,18 @@ class BubbleSorter implements Sorter {
     }
 
     public void sort(double[] array) {
+        SortMetrics metrics = SortMetrics.current();
         for (int k = array.length-1; k >=0; k--) {
+            long swaps = 0;
             for (int i = 0; i < k; i++) {
-                if (array[i] > array[i+1])
+                if (array[i] > array[i+1]) {
                     swap(array, i, i+1);
+                    swaps++;
+                }
+            }
+            if (metrics != null) {
+                metrics.comparisons.add(k);
+                metrics.swaps.add(swaps);
             }
         }
     }
@@ -74,11 +93,16 @@ class ShiftSorter implements Sorter {
     }
 
     public void sort(double[] array) {
+        SortMetrics metrics = SortMetrics.current();
         for (int i = 1; i < array.length; i++) {
             double a = array[i];
             int j = 0;
             while (a > array[j])
                 j++;
+            if (metrics != null) {
+                metrics.comparisons.add(j + 1);
+                metrics.moves.add(i - j + 1);
+            }
 
             for (int k = i; k > j; k--)
                 array[k] = array[k-1];
@@ -87,8 +111,1260 @@ class ShiftSorter implements Sorter {
     }
 }
 
+/**
+ * Introspective dual-pivot quicksort.
+ * Small ranges are finished with insertion sort, ranges whose two pivots are equal
+ * are split three ways so that runs of duplicates are not sorted again,
+ * and a range that is still not sorted after 2*log2(n) partitions is finished with heapsort,
+ * which bounds both the running time by O(n log n) and the recursion depth.
+ * Values are ordered as by <code>Double.compare</code>: -0.0 before 0.0 and NaN last.
+ */
+class IntroSorter implements Sorter {
+    private static final int INSERTION_SORT_THRESHOLD = 32;
+
+    private IntroSorter() {}
+
+    private static final IntroSorter INSTANCE = new IntroSorter();
+
+    public static IntroSorter getInstance() {
+        return INSTANCE;
+    }
+
+    public void sort(double[] array) {
+        sort(array, 0, array.length - 1);
+    }
+
+    /**
+     * Sort the range from <code>left</code> to <code>right</code> inclusive.
+     */
+    public void sort(double[] array, int left, int right) {
+        int last = DoubleOrder.moveNaNsToEnd(array, left, right);
+        int depth = 2 * (32 - Integer.numberOfLeadingZeros(last - left + 1));
+        introSort(array, left, last, depth, 0);
+        DoubleOrder.orderZeros(array, left, last);
+    }
+
+    private void introSort(double[] array, int left, int right, int depth, int level) {
+        SortMetrics.depth(level);
+        while (right - left >= INSERTION_SORT_THRESHOLD) {
+            if (depth-- == 0) {
+                heapSort(array, left, right);
+                return;
+            }
+
+            // sort five evenly spaced elements and take the second and the fourth as pivots
+            int seventh = ((right - left) >> 3) + ((right - left) >> 6) + 1;
+            int e3 = (left + right) >>> 1;
+            int e2 = e3 - seventh, e1 = e2 - seventh;
+            int e4 = e3 + seventh, e5 = e4 + seventh;
+            sort5(array, e1, e2, e3, e4, e5);
+
+            if (array[e2] == array[e4]) {
+                // three-way partition around a single pivot: < pivot, == pivot, > pivot
+                double pivot = array[e3];
+                int lt = left, gt = right;
+                for (int k = left; k <= gt; ) {
+                    double ak = array[k];
+                    if (ak < pivot)
+                        swap(array, lt++, k++);
+                    else if (ak > pivot)
+                        swap(array, k, gt--);
+                    else
+                        k++;
+                }
+                // every element is compared once, and a second time unless it is less than the pivot
+                SortMetrics.compare(2L * (right - left + 1) - (lt - left));
+                if (lt - left < right - gt) {
+                    introSort(array, left, lt - 1, depth, level + 1);
+                    left = gt + 1;
+                } else {
+                    introSort(array, gt + 1, right, depth, level + 1);
+                    right = lt - 1;
+                }
+                continue;
+            }
+
+            swap(array, e2, left);
+            swap(array, e4, right);
+            double pivot1 = array[left];
+            double pivot2 = array[right];
+
+            int less = left + 1, great = right - 1;
+            for (int k = less; k <= great; k++) {
+                double ak = array[k];
+                SortMetrics.compare();
+                if (ak < pivot1) {
+                    swap(array, k, less++);
+                } else if (ak > pivot2) {
+                    SortMetrics.compare();
+                    while (array[great] > pivot2 && k < great) {
+                        SortMetrics.compare();
+                        great--;
+                    }
+                    swap(array, k, great--);
+                    SortMetrics.compare(2);
+                    if (array[k] < pivot1)
+                        swap(array, k, less++);
+                } else {
+                    SortMetrics.compare();
+                }
+            }
+            swap(array, left, less - 1);
+            swap(array, right, great + 1);
+
+            introSort(array, left, less - 2, depth, level + 1);
+            introSort(array, great + 2, right, depth, level + 1);
+            left = less;
+            right = great;
+        }
+        insertionSort(array, left, right);
+    }
+
+    private static void sort5(double[] array, int e1, int e2, int e3, int e4, int e5) {
+        int[] e = { e1, e2, e3, e4, e5 };
+        for (int i = 1; i < e.length; i++) {
+            double v = array[e[i]];
+            int j = i - 1;
+            for (; j >= 0 && array[e[j]] > v; j--)
+                array[e[j + 1]] = array[e[j]];
+            array[e[j + 1]] = v;
+        }
+    }
+
+    static void insertionSort(double[] array, int left, int right) {
+        for (int i = left + 1; i <= right; i++) {
+            double v = array[i];
+            int j = i - 1;
+            for (; j >= left && array[j] > v; j--)
+                array[j + 1] = array[j];
+            array[j + 1] = v;
+            SortMetrics.compare(i - j - ((j < left) ? 1 : 0));
+            SortMetrics.move(i - j);
+        }
+    }
+
+    static void heapSort(double[] array, int left, int right) {
+        int n = right - left + 1;
+        for (int i = n / 2 - 1; i >= 0; i--)
+            siftDown(array, left, i, n);
+        for (int end = n - 1; end > 0; end--) {
+            swap(array, left, left + end);
+            siftDown(array, left, 0, end);
+        }
+    }
+
+    private static void siftDown(double[] array, int base, int i, int n) {
+        double v = array[base + i];
+        for (int child = 2 * i + 1; child < n; child = 2 * i + 1) {
+            SortMetrics.compare((child + 1 < n) ? 2 : 1);
+            if (child + 1 < n && array[base + child + 1] > array[base + child])
+                child++;
+            if (array[base + child] <= v)
+                break;
+            array[base + i] = array[base + child];
+            SortMetrics.move(1);
+            i = child;
+        }
+        array[base + i] = v;
+        SortMetrics.move(1);
+    }
+
+    public static void swap(double[] array, int i, int j) {
+        SortMetrics.swap();
+        double temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+}
+
+/**
+ * Fork-join merge sort.
+ * Ranges shorter than the sequential threshold are sorted with {@link IntroSorter},
+ * longer ones are split in halves that are sorted in parallel and merged in parallel,
+ * alternating between the array and one scratch buffer of the same length.
+ */
+class ParallelSorter implements Sorter {
+    public static final int DEFAULT_THRESHOLD = 1 << 13;
+
+    private static final ParallelSorter INSTANCE =
+            new ParallelSorter(Runtime.getRuntime().availableProcessors(), DEFAULT_THRESHOLD);
+
+    public static ParallelSorter getInstance() {
+        return INSTANCE;
+    }
+
+    private final int parallelism;
+    private final int threshold;
+    private ForkJoinPool pool;
+
+    /**
+     * @param parallelism the number of worker threads
+     * @param threshold the length under which a range is sorted or merged sequentially
+     */
+    public ParallelSorter(int parallelism, int threshold) {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("Illegal parallelism: " + parallelism);
+        if (threshold <= 0)
+            throw new IllegalArgumentException("Illegal threshold: " + threshold);
+        this.parallelism = parallelism;
+        this.threshold = threshold;
+    }
+
+    public void sort(double[] array) {
+        int last = DoubleOrder.moveNaNsToEnd(array, 0, array.length - 1);
+        if (last + 1 <= threshold) {
+            IntroSorter.getInstance().sort(array, 0, last);
+            return;
+        }
+        double[] buffer = new double[last + 1];
+        getPool().invoke(new SortTask(array, buffer, 0, last + 1, false));
+        DoubleOrder.orderZeros(array, 0, last);
+    }
+
+    private synchronized ForkJoinPool getPool() {
+        if (pool == null)
+            pool = new ForkJoinPool(parallelism);
+        return pool;
+    }
+
+    /**
+     * Sorts <code>[from, to)</code> of <code>array</code> into the same range of
+     * <code>buffer</code> if <code>intoBuffer</code>, or of <code>array</code> otherwise.
+     */
+    private class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] array, buffer;
+        private final int from, to;
+        private final boolean intoBuffer;
+        // the counters of the sort that forked the task, counted into by whichever worker runs it
+        private final SortMetrics metrics = SortMetrics.current();
+
+        SortTask(double[] array, double[] buffer, int from, int to, boolean intoBuffer) {
+            this.array = array;
+            this.buffer = buffer;
+            this.from = from;
+            this.to = to;
+            this.intoBuffer = intoBuffer;
+        }
+
+        @Override protected void compute() {
+            SortMetrics outer = SortMetrics.enter(metrics);
+            try {
+                sort();
+            } finally {
+                SortMetrics.enter(outer);
+            }
+        }
+
+        private void sort() {
+            if (to - from <= threshold) {
+                IntroSorter.getInstance().sort(array, from, to - 1);
+                if (intoBuffer) {
+                    System.arraycopy(array, from, buffer, from, to - from);
+                    SortMetrics.move(to - from);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new SortTask(array, buffer, from, mid, !intoBuffer),
+                      new SortTask(array, buffer, mid, to, !intoBuffer));
+            double[] src = intoBuffer ? array : buffer;
+            double[] dst = intoBuffer ? buffer : array;
+            new MergeTask(src, from, mid, mid, to, dst, from).compute();
+        }
+    }
+
+    /**
+     * Merges the sorted runs <code>src[lo1, hi1)</code> and <code>src[lo2, hi2)</code> into <code>dst</code>
+     * starting at <code>d</code>, splitting the larger run at its middle and the other one by binary search.
+     */
+    private class MergeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final double[] src, dst;
+        private final int lo1, hi1, lo2, hi2, d;
+        private final SortMetrics metrics = SortMetrics.current();
+
+        MergeTask(double[] src, int lo1, int hi1, int lo2, int hi2, double[] dst, int d) {
+            this.src = src;
+            this.lo1 = lo1;
+            this.hi1 = hi1;
+            this.lo2 = lo2;
+            this.hi2 = hi2;
+            this.dst = dst;
+            this.d = d;
+        }
+
+        @Override protected void compute() {
+            SortMetrics outer = SortMetrics.enter(metrics);
+            try {
+                split();
+            } finally {
+                SortMetrics.enter(outer);
+            }
+        }
+
+        private void split() {
+            int n1 = hi1 - lo1, n2 = hi2 - lo2;
+            if (n1 + n2 <= threshold) {
+                merge();
+                return;
+            }
+            if (n1 < n2) {
+                new MergeTask(src, lo2, hi2, lo1, hi1, dst, d).compute();
+                return;
+            }
+            int m1 = (lo1 + hi1) >>> 1;
+            int m2 = lowerBound(src, lo2, hi2, src[m1]);
+            int dm = d + (m1 - lo1) + (m2 - lo2);
+            dst[dm] = src[m1];
+            invokeAll(new MergeTask(src, lo1, m1, lo2, m2, dst, d),
+                      new MergeTask(src, m1 + 1, hi1, m2, hi2, dst, dm + 1));
+        }
+
+        private void merge() {
+            int i = lo1, j = lo2, k = d;
+            while (i < hi1 && j < hi2)
+                dst[k++] = (src[j] < src[i]) ? src[j++] : src[i++];
+            SortMetrics.compare(k - d);
+            SortMetrics.move(hi1 - lo1 + hi2 - lo2);
+            System.arraycopy(src, i, dst, k, hi1 - i);
+            System.arraycopy(src, j, dst, k + hi1 - i, hi2 - j);
+        }
+    }
+
+    private static int lowerBound(double[] array, int from, int to, double key) {
+        while (from < to) {
+            SortMetrics.compare();
+            int mid = (from + to) >>> 1;
+            if (array[mid] < key)
+                from = mid + 1;
+            else
+                to = mid;
+        }
+        return from;
+    }
+}
+
+/**
+ * LSD radix sort on 11-bit digits.
+ * Every value is mapped to a 64-bit key whose unsigned order is the order of <code>Double.compare</code>:
+ * the sign bit of positive values is flipped and all bits of negative values are inverted,
+ * so -0.0 comes before 0.0 and NaN, canonicalized, after positive infinity.
+ * The histograms of all digits are counted in one pass, and a pass whose digit is the same
+ * for every key is skipped.
+ * The key arrays and histograms are kept per thread and reused by the next sort of the thread,
+ * up to {@link #MAX_KEPT} values; larger arrays get buffers of their own.
+ */
+class RadixSorter implements Sorter {
+    private static final int BITS = 11;
+    private static final int RADIX = 1 << BITS;
+    private static final int PASSES = (64 + BITS - 1) / BITS;
+
+    /**
+     * Largest key arrays kept between sorts, in values: 2 * 32 MB per thread.
+     */
+    static final int MAX_KEPT = 1 << 22;
+
+    private static class Scratch {
+        long[] keys = new long[0];
+        long[] buffer = new long[0];
+        final int[][] counts = new int[PASSES][RADIX];
+    }
+
+    private static final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private RadixSorter() {}
+
+    private static final RadixSorter INSTANCE = new RadixSorter();
+
+    public static RadixSorter getInstance() {
+        return INSTANCE;
+    }
+
+    public void sort(double[] array) {
+        int n = array.length;
+        Scratch s = scratch.get();
+        if (s.keys.length < n) {
+            long[] keys = new long[n];
+            long[] buffer = new long[n];
+            if (n > MAX_KEPT) {
+                sort(array, keys, buffer, new int[PASSES][RADIX]);
+                return;
+            }
+            s.keys = keys;
+            s.buffer = buffer;
+        }
+        for (int[] count : s.counts)
+            Arrays.fill(count, 0);
+        sort(array, s.keys, s.buffer, s.counts);
+    }
+
+    private static void sort(double[] array, long[] keys, long[] buffer, int[][] counts) {
+        int n = array.length;
+
+        for (int i = 0; i < n; i++) {
+            long key = toKey(array[i]);
+            keys[i] = key;
+            for (int p = 0; p < PASSES; p++)
+                counts[p][(int) (key >>> (p * BITS)) & (RADIX - 1)]++;
+        }
+
+        for (int p = 0; p < PASSES; p++) {
+            int[] count = counts[p];
+            int shift = p * BITS;
+            if (n == 0 || count[(int) (keys[0] >>> shift) & (RADIX - 1)] == n)
+                continue;
+
+            int sum = 0;
+            for (int d = 0; d < RADIX; d++) {
+                int c = count[d];
+                count[d] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                long key = keys[i];
+                buffer[count[(int) (key >>> shift) & (RADIX - 1)]++] = key;
+            }
+            long[] temp = keys;
+            keys = buffer;
+            buffer = temp;
+            SortMetrics.move(n);
+        }
+
+        for (int i = 0; i < n; i++)
+            array[i] = fromKey(keys[i]);
+    }
+
+    static long toKey(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) | Long.MIN_VALUE);
+    }
+
+    static double fromKey(long key) {
+        return Double.longBitsToDouble(key ^ ((~key >> 63) | Long.MIN_VALUE));
+    }
+}
+
+/**
+ * Adaptive natural merge sort in the manner of TimSort.
+ * The array is scanned for runs that are already ascending or strictly descending (which are reversed),
+ * runs shorter than a minimum length are extended with binary insertion sort,
+ * and the runs are merged with a stack that keeps their lengths balanced.
+ * Merges first skip the prefix and the suffix that are already in place and switch to galloping
+ * (exponential search) while one run keeps winning, so sorted, reversed and nearly sorted input takes linear time.
+ * Values are ordered as by <code>Double.compare</code>: -0.0 before 0.0 and NaN last.
+ */
+class NaturalMergeSorter implements Sorter {
+    private static final int MIN_MERGE = 32;
+    private static final int MIN_GALLOP = 7;
+
+    private NaturalMergeSorter() {}
+
+    private static final NaturalMergeSorter INSTANCE = new NaturalMergeSorter();
+
+    public static NaturalMergeSorter getInstance() {
+        return INSTANCE;
+    }
+
+    public void sort(double[] array) {
+        sort(array, 0, array.length - 1);
+    }
+
+    /**
+     * Sort the range from <code>left</code> to <code>right</code> inclusive.
+     */
+    public void sort(double[] array, int left, int right) {
+        int last = DoubleOrder.moveNaNsToEnd(array, left, right);
+        new Merger(array).sort(left, last + 1);
+        DoubleOrder.orderZeros(array, left, last);
+    }
+
+    /**
+     * @return the minimum run length, chosen so that the number of runs is a power of two or slightly less
+     */
+    private static int minRunLength(int n) {
+        int r = 0;
+        while (n >= MIN_MERGE) {
+            r |= n & 1;
+            n >>= 1;
+        }
+        return n + r;
+    }
+
+    /**
+     * @return the length of the run starting at <code>lo</code>, which is made ascending
+     */
+    private static int countRunAndMakeAscending(double[] array, int lo, int hi) {
+        int runHi = lo + 1;
+        if (runHi == hi)
+            return 1;
+        if (array[runHi++] < array[lo]) {
+            while (runHi < hi && array[runHi] < array[runHi - 1])
+                runHi++;
+            for (int i = lo, j = runHi - 1; i < j; i++, j--)
+                swap(array, i, j);
+        } else {
+            while (runHi < hi && array[runHi] >= array[runHi - 1])
+                runHi++;
+        }
+        SortMetrics.compare(runHi - lo - ((runHi == hi) ? 1 : 0));
+        return runHi - lo;
+    }
+
+    /**
+     * Sort the range from <code>lo</code> inclusive to <code>hi</code> exclusive,
+     * of which the part before <code>start</code> is already sorted.
+     */
+    private static void binarySort(double[] array, int lo, int hi, int start) {
+        if (start == lo)
+            start++;
+        for (; start < hi; start++) {
+            double pivot = array[start];
+            int left = lo, right = start;
+            while (left < right) {
+                int mid = (left + right) >>> 1;
+                if (pivot < array[mid])
+                    right = mid;
+                else
+                    left = mid + 1;
+            }
+            System.arraycopy(array, left, array, left + 1, start - left);
+            array[left] = pivot;
+            // a binary search over n values takes about log2(n) + 1 comparisons
+            SortMetrics.compare(32 - Integer.numberOfLeadingZeros(start - lo));
+            SortMetrics.move(start - left + 1);
+        }
+    }
+
+    /**
+     * @return the position of the first element of the sorted range that is not less than <code>key</code>,
+     *         relative to <code>base</code>, searching outwards from <code>hint</code>
+     */
+    private static int gallopLeft(double key, double[] array, int base, int len, int hint) {
+        int lastOfs = 0, ofs = 1;
+        SortMetrics.compare(2);
+        if (key > array[base + hint]) {
+            int maxOfs = len - hint;
+            while (ofs < maxOfs && key > array[base + hint + ofs]) {
+                SortMetrics.compare();
+                lastOfs = ofs;
+                ofs = (ofs << 1) + 1;
+                if (ofs <= 0)
+                    ofs = maxOfs;
+            }
+            if (ofs > maxOfs)
+                ofs = maxOfs;
+            lastOfs += hint;
+            ofs += hint;
+        } else {
+            int maxOfs = hint + 1;
+            while (ofs < maxOfs && key <= array[base + hint - ofs]) {
+                SortMetrics.compare();
+                lastOfs = ofs;
+                ofs = (ofs << 1) + 1;
+                if (ofs <= 0)
+                    ofs = maxOfs;
+            }
+            if (ofs > maxOfs)
+                ofs = maxOfs;
+            int tmp = lastOfs;
+            lastOfs = hint - ofs;
+            ofs = hint - tmp;
+        }
+
+        lastOfs++;
+        while (lastOfs < ofs) {
+            SortMetrics.compare();
+            int m = lastOfs + ((ofs - lastOfs) >>> 1);
+            if (key > array[base + m])
+                lastOfs = m + 1;
+            else
+                ofs = m;
+        }
+        return ofs;
+    }
+
+    /**
+     * @return the position of the first element of the sorted range that is greater than <code>key</code>,
+     *         relative to <code>base</code>, searching outwards from <code>hint</code>
+     */
+    private static int gallopRight(double key, double[] array, int base, int len, int hint) {
+        int lastOfs = 0, ofs = 1;
+        SortMetrics.compare(2);
+        if (key < array[base + hint]) {
+            int maxOfs = hint + 1;
+            while (ofs < maxOfs && key < array[base + hint - ofs]) {
+                SortMetrics.compare();
+                lastOfs = ofs;
+                ofs = (ofs << 1) + 1;
+                if (ofs <= 0)
+                    ofs = maxOfs;
+            }
+            if (ofs > maxOfs)
+                ofs = maxOfs;
+            int tmp = lastOfs;
+            lastOfs = hint - ofs;
+            ofs = hint - tmp;
+        } else {
+            int maxOfs = len - hint;
+            while (ofs < maxOfs && key >= array[base + hint + ofs]) {
+                SortMetrics.compare();
+                lastOfs = ofs;
+                ofs = (ofs << 1) + 1;
+                if (ofs <= 0)
+                    ofs = maxOfs;
+            }
+            if (ofs > maxOfs)
+                ofs = maxOfs;
+            lastOfs += hint;
+            ofs += hint;
+        }
+
+        lastOfs++;
+        while (lastOfs < ofs) {
+            SortMetrics.compare();
+            int m = lastOfs + ((ofs - lastOfs) >>> 1);
+            if (key < array[base + m])
+                ofs = m;
+            else
+                lastOfs = m + 1;
+        }
+        return ofs;
+    }
+
+    public static void swap(double[] array, int i, int j) {
+        SortMetrics.swap();
+        double temp = array[i];
+        array[i] = array[j];
+        array[j] = temp;
+    }
+
+    /**
+     * The state of one sort: the stack of pending runs, the merge buffer and the galloping threshold.
+     */
+    private static class Merger {
+        private final double[] a;
+        private double[] tmp = new double[0];
+        private int minGallop = MIN_GALLOP;
+
+        // with the invariants kept by mergeCollapse, 49 runs cover any array length
+        private final int[] runBase = new int[49];
+        private final int[] runLen = new int[49];
+        private int stackSize;
+
+        Merger(double[] a) {
+            this.a = a;
+        }
+
+        void sort(int lo, int hi) {
+            int remaining = hi - lo;
+            if (remaining < 2)
+                return;
+            if (remaining < MIN_MERGE) {
+                binarySort(a, lo, hi, lo + countRunAndMakeAscending(a, lo, hi));
+                return;
+            }
+
+            int minRun = minRunLength(remaining);
+            do {
+                int runLength = countRunAndMakeAscending(a, lo, hi);
+                if (runLength < minRun) {
+                    int force = Math.min(remaining, minRun);
+                    binarySort(a, lo, lo + force, lo + runLength);
+                    runLength = force;
+                }
+                runBase[stackSize] = lo;
+                runLen[stackSize] = runLength;
+                stackSize++;
+                SortMetrics.depth(stackSize);
+                mergeCollapse();
+                lo += runLength;
+                remaining -= runLength;
+            } while (remaining != 0);
+
+            while (stackSize > 1) {
+                int n = stackSize - 2;
+                if (n > 0 && runLen[n - 1] < runLen[n + 1])
+                    n--;
+                mergeAt(n);
+            }
+        }
+
+        /**
+         * Merge the runs on top of the stack until every run is longer than the two above it together.
+         */
+        private void mergeCollapse() {
+            while (stackSize > 1) {
+                int n = stackSize - 2;
+                if (n > 0 && runLen[n - 1] <= runLen[n] + runLen[n + 1]
+                        || n > 1 && runLen[n - 2] <= runLen[n] + runLen[n - 1]) {
+                    if (runLen[n - 1] < runLen[n + 1])
+                        n--;
+                } else if (runLen[n] > runLen[n + 1]) {
+                    break;
+                }
+                mergeAt(n);
+            }
+        }
+
+        private void mergeAt(int i) {
+            int base1 = runBase[i], len1 = runLen[i];
+            int base2 = runBase[i + 1], len2 = runLen[i + 1];
+            runLen[i] = len1 + len2;
+            if (i == stackSize - 3) {
+                runBase[i + 1] = runBase[i + 2];
+                runLen[i + 1] = runLen[i + 2];
+            }
+            stackSize--;
+
+            // elements of the first run before the head of the second, and of the second run
+            // after the tail of the first, are already in place
+            int k = gallopRight(a[base2], a, base1, len1, 0);
+            base1 += k;
+            len1 -= k;
+            if (len1 == 0)
+                return;
+            len2 = gallopLeft(a[base1 + len1 - 1], a, base2, len2, len2 - 1);
+            if (len2 == 0)
+                return;
+
+            // the shorter run is copied out, then every element of both is written back once
+            SortMetrics.move(len1 + len2 + Math.min(len1, len2));
+            if (len1 <= len2)
+                mergeLo(base1, len1, base2, len2);
+            else
+                mergeHi(base1, len1, base2, len2);
+        }
+
+        private double[] buffer(int length) {
+            if (tmp.length < length)
+                tmp = new double[Math.max(length, Math.min(a.length >>> 1, 2 * length))];
+            return tmp;
+        }
+
+        /**
+         * Merge from the left, the first run being the shorter one and copied out.
+         */
+        private void mergeLo(int base1, int len1, int base2, int len2) {
+            double[] a = this.a;
+            double[] tmp = buffer(len1);
+            System.arraycopy(a, base1, tmp, 0, len1);
+            int cursor1 = 0, cursor2 = base2, dest = base1;
+
+            a[dest++] = a[cursor2++];
+            if (--len2 == 0) {
+                System.arraycopy(tmp, cursor1, a, dest, len1);
+                return;
+            }
+            if (len1 == 1) {
+                System.arraycopy(a, cursor2, a, dest, len2);
+                a[dest + len2] = tmp[cursor1];
+                return;
+            }
+
+            int minGallop = this.minGallop;
+            outer:
+            while (true) {
+                int count1 = 0, count2 = 0;
+                do {
+                    SortMetrics.compare();
+                    if (a[cursor2] < tmp[cursor1]) {
+                        a[dest++] = a[cursor2++];
+                        count2++;
+                        count1 = 0;
+                        if (--len2 == 0)
+                            break outer;
+                    } else {
+                        a[dest++] = tmp[cursor1++];
+                        count1++;
+                        count2 = 0;
+                        if (--len1 == 1)
+                            break outer;
+                    }
+                } while ((count1 | count2) < minGallop);
+
+                do {
+                    count1 = gallopRight(a[cursor2], tmp, cursor1, len1, 0);
+                    if (count1 != 0) {
+                        System.arraycopy(tmp, cursor1, a, dest, count1);
+                        dest += count1;
+                        cursor1 += count1;
+                        len1 -= count1;
+                        if (len1 <= 1)
+                            break outer;
+                    }
+                    a[dest++] = a[cursor2++];
+                    if (--len2 == 0)
+                        break outer;
+
+                    count2 = gallopLeft(tmp[cursor1], a, cursor2, len2, 0);
+                    if (count2 != 0) {
+                        System.arraycopy(a, cursor2, a, dest, count2);
+                        dest += count2;
+                        cursor2 += count2;
+                        len2 -= count2;
+                        if (len2 == 0)
+                            break outer;
+                    }
+                    a[dest++] = tmp[cursor1++];
+                    if (--len1 == 1)
+                        break outer;
+                    minGallop--;
+                } while (count1 >= MIN_GALLOP | count2 >= MIN_GALLOP);
+                if (minGallop < 0)
+                    minGallop = 0;
+                minGallop += 2;
+            }
+            this.minGallop = Math.max(minGallop, 1);
+
+            if (len1 == 1) {
+                System.arraycopy(a, cursor2, a, dest, len2);
+                a[dest + len2] = tmp[cursor1];
+            } else {
+                System.arraycopy(tmp, cursor1, a, dest, len1);
+            }
+        }
+
+        /**
+         * Merge from the right, the second run being the shorter one and copied out.
+         */
+        private void mergeHi(int base1, int len1, int base2, int len2) {
+            double[] a = this.a;
+            double[] tmp = buffer(len2);
+            System.arraycopy(a, base2, tmp, 0, len2);
+            int cursor1 = base1 + len1 - 1, cursor2 = len2 - 1, dest = base2 + len2 - 1;
+
+            a[dest--] = a[cursor1--];
+            if (--len1 == 0) {
+                System.arraycopy(tmp, 0, a, dest - (len2 - 1), len2);
+                return;
+            }
+            if (len2 == 1) {
+                dest -= len1;
+                cursor1 -= len1;
+                System.arraycopy(a, cursor1 + 1, a, dest + 1, len1);
+                a[dest] = tmp[cursor2];
+                return;
+            }
+
+            int minGallop = this.minGallop;
+            outer:
+            while (true) {
+                int count1 = 0, count2 = 0;
+                do {
+                    SortMetrics.compare();
+                    if (tmp[cursor2] < a[cursor1]) {
+                        a[dest--] = a[cursor1--];
+                        count1++;
+                        count2 = 0;
+                        if (--len1 == 0)
+                            break outer;
+                    } else {
+                        a[dest--] = tmp[cursor2--];
+                        count2++;
+                        count1 = 0;
+                        if (--len2 == 1)
+                            break outer;
+                    }
+                } while ((count1 | count2) < minGallop);
+
+                do {
+                    count1 = len1 - gallopRight(tmp[cursor2], a, base1, len1, len1 - 1);
+                    if (count1 != 0) {
+                        dest -= count1;
+                        cursor1 -= count1;
+                        len1 -= count1;
+                        System.arraycopy(a, cursor1 + 1, a, dest + 1, count1);
+                        if (len1 == 0)
+                            break outer;
+                    }
+                    a[dest--] = tmp[cursor2--];
+                    if (--len2 == 1)
+                        break outer;
+
+                    count2 = len2 - gallopLeft(a[cursor1], tmp, 0, len2, len2 - 1);
+                    if (count2 != 0) {
+                        dest -= count2;
+                        cursor2 -= count2;
+                        len2 -= count2;
+                        System.arraycopy(tmp, cursor2 + 1, a, dest + 1, count2);
+                        if (len2 <= 1)
+                            break outer;
+                    }
+                    a[dest--] = a[cursor1--];
+                    if (--len1 == 0)
+                        break outer;
+                    minGallop--;
+                } while (count1 >= MIN_GALLOP | count2 >= MIN_GALLOP);
+                if (minGallop < 0)
+                    minGallop = 0;
+                minGallop += 2;
+            }
+            this.minGallop = Math.max(minGallop, 1);
+
+            if (len2 == 1) {
+                dest -= len1;
+                cursor1 -= len1;
+                System.arraycopy(a, cursor1 + 1, a, dest + 1, len1);
+                a[dest] = tmp[cursor2];
+            } else {
+                System.arraycopy(tmp, 0, a, dest - (len2 - 1), len2);
+            }
+        }
+    }
+}
+
+/**
+ * Looks at the array before sorting it and hands it to the sorter expected to be fastest,
+ * from the measurements of the benchmark suite:
+ * input made of a few non-descending or strictly descending runs goes to {@link NaturalMergeSorter};
+ * small, nearly sorted or duplicate-heavy arrays, and arrays whose radix keys do not fit in the free heap,
+ * to {@link IntroSorter}; other large arrays to {@link ParallelSorter} on four processors or more
+ * and to {@link RadixSorter} otherwise.
+ * One linear pass counts the NaNs, the descents and the runs as {@link NaturalMergeSorter} finds them,
+ * and the duplicate ratio is estimated from an evenly spaced sample.
+ * The choice and its reason are logged within instrumented sorts, and for every sort with "auto:verbose".
+ */
+class AutoSorter implements Sorter {
+    private static final int SAMPLE_SIZE = 1024;
+    private static final int PRESORTED_RUNS = 16;
+    private static final int RADIX_THRESHOLD = 1 << 14;
+    private static final int PARALLEL_THRESHOLD = 1 << 20;
+    private static final int PARALLEL_PROCESSORS = 4;
+
+    private static final AutoSorter INSTANCE = new AutoSorter(System.err, false);
+
+    public static AutoSorter getInstance() {
+        return INSTANCE;
+    }
+
+    private final PrintStream log;
+    private final boolean verbose;
+
+    /**
+     * @param verbose whether to log the choice of every sort; otherwise it is only logged within an instrumented sort
+     */
+    public AutoSorter(PrintStream log, boolean verbose) {
+        this.log = log;
+        this.verbose = verbose;
+    }
+
+    public void sort(double[] array) {
+        int n = array.length;
+        // runs are counted over the values that are not NaN as NaturalMergeSorter finds them:
+        // non-descending, or strictly descending and reversed, so ties break descending runs
+        int nans = 0, descents = 0, ascents = 0, runs = 0;
+        boolean started = false, open = false, descending = false;
+        double prev = 0;
+        for (int i = 0; i < n; i++) {
+            double v = array[i];
+            if (Double.isNaN(v)) {
+                nans++;
+                continue;
+            }
+            if (!started) {
+                started = open = true;
+                runs = 1;
+            } else {
+                if (v < prev)
+                    descents++;
+                else if (v > prev)
+                    ascents++;
+                if (open) {
+                    descending = v < prev;
+                    open = false;
+                } else if (descending != (v < prev)) {
+                    runs++;
+                    open = true;
+                }
+            }
+            prev = v;
+        }
+        double distinct = distinctRatio(array);
+        int values = n - nans;
+
+        Sorter sorter;
+        String reason;
+        // order breaks in either direction, ties aside
+        int breaks = Math.min(descents, ascents);
+        if (values < 2) {
+            sorter = IntroSorter.getInstance();
+            reason = "nothing to order";
+        } else if (runs <= PRESORTED_RUNS) {
+            sorter = NaturalMergeSorter.getInstance();
+            reason = (runs > 1) ? "presorted in " + runs + " runs, merging them"
+                    : descending ? "reversed" : "already in order";
+        } else if (values < RADIX_THRESHOLD) {
+            sorter = IntroSorter.getInstance();
+            reason = "small input";
+        } else if (breaks < values / 20) {
+            sorter = IntroSorter.getInstance();
+            reason = "nearly sorted or reversed, partitions stay cheap";
+        } else if (distinct <= 0.5) {
+            sorter = IntroSorter.getInstance();
+            reason = "many duplicates, partitioned three ways";
+        } else if (Runtime.getRuntime().availableProcessors() >= PARALLEL_PROCESSORS && values >= PARALLEL_THRESHOLD) {
+            sorter = ParallelSorter.getInstance();
+            reason = "large unsorted input on " + Runtime.getRuntime().availableProcessors() + " processors";
+        } else if (!fits(16L * n)) {
+            sorter = IntroSorter.getInstance();
+            reason = "not enough free memory for radix keys, sorting in place";
+        } else {
+            sorter = RadixSorter.getInstance();
+            reason = "large unsorted input";
+        }
+
+        if (verbose || SortMetrics.current() != null)
+            log.printf(Locale.ROOT, "auto: %s for %d values (%d NaN, %d runs, %.1f%% descents, %.1f%% distinct in sample): %s\n",
+                    name(sorter), n, nans, runs, (values > 1) ? 100.0 * descents / (values - 1) : 0, 100 * distinct, reason);
+        sorter.sort(array);
+    }
+
+    /**
+     * @return the ratio of distinct values in an evenly spaced sample, NaNs included
+     */
+    private static double distinctRatio(double[] array) {
+        int n = Math.min(array.length, SAMPLE_SIZE);
+        if (n == 0)
+            return 1;
+        double[] sample = new double[n];
+        for (int i = 0; i < n; i++)
+            sample[i] = array[(int) ((long) i * array.length / n)];
+        Arrays.sort(sample);
+        int distinct = 1;
+        for (int i = 1; i < n; i++)
+            if (Double.compare(sample[i], sample[i - 1]) != 0)
+                distinct++;
+        return (double) distinct / n;
+    }
+
+    private static boolean fits(long bytes) {
+        Runtime r = Runtime.getRuntime();
+        return r.maxMemory() - (r.totalMemory() - r.freeMemory()) > bytes + (bytes >> 2);
+    }
+
+    private static String name(Sorter sorter) {
+        if (sorter instanceof NaturalMergeSorter)
+            return "natural";
+        if (sorter instanceof RadixSorter)
+            return "radix";
+        if (sorter instanceof ParallelSorter)
+            return "parallel";
+        return "intro";
+    }
+}
+
+/**
+ * Helpers for sorting with the primitive comparison operators while keeping the order of
+ * <code>Double.compare</code>, as <code>Arrays.sort</code> does:
+ * NaNs are moved out of the way before sorting and the zeros are ordered by sign afterwards.
+ */
+class DoubleOrder {
+    private DoubleOrder() {}
+
+    /**
+     * Move every NaN of the range to its end.
+     * @return the index of the last value that is not NaN
+     */
+    static int moveNaNsToEnd(double[] array, int left, int right) {
+        while (right >= left && Double.isNaN(array[right]))
+            right--;
+        for (int k = right - 1; k >= left; k--) {
+            if (Double.isNaN(array[k])) {
+                array[k] = array[right];
+                array[right--] = Double.NaN;
+            }
+        }
+        return right;
+    }
+
+    /**
+     * Put -0.0 before 0.0 in a range already sorted with the comparison operators.
+     */
+    static void orderZeros(double[] array, int left, int right) {
+        int lo = left, hi = right;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (array[mid] < 0.0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        int negative = 0, k = lo;
+        for (; k <= right && array[k] == 0.0; k++)
+            if (Double.doubleToRawLongBits(array[k]) < 0)
+                negative++;
+        for (int i = lo; i < k; i++)
+            array[i] = (i - lo < negative) ? -0.0 : 0.0;
+    }
+}
+
+/**
+ * Counters filled in by the sorters during one {@link InstrumentedSorter} call:
+ * comparisons, swaps, other element moves and the deepest recursion (or run stack) level.
+ * The counters of a call are found through the thread running it; the tasks of {@link ParallelSorter}
+ * take those of the thread that forks them, so that their workers count into the same call.
+ * Concurrent instrumented sorts count separately.
+ * When no instrumented sort runs, every hook is a test of a static flag; the quadratic sorters
+ * look up their counters once per sort instead of in their inner loops.
+ */
+class SortMetrics {
+    // true while any instrumented sort runs, read by every sorting thread
+    static volatile boolean enabled;
+
+    // instrumented sorts running, guarded by the class
+    private static int active;
+    private static final ThreadLocal<SortMetrics> current = new ThreadLocal<>();
+
+    final LongAdder comparisons = new LongAdder();
+    final LongAdder swaps = new LongAdder();
+    final LongAdder moves = new LongAdder();
+    private final AtomicInteger maxDepth = new AtomicInteger();
+
+    /**
+     * @return the counters of the instrumented sort running in this thread, or <tt>null</tt>
+     */
+    static SortMetrics current() {
+        return enabled ? current.get() : null;
+    }
+
+    /**
+     * Count into <code>metrics</code> in this thread, until the returned counters are entered again.
+     * @return the counters the thread counted into before
+     */
+    static SortMetrics enter(SortMetrics metrics) {
+        SortMetrics outer = current.get();
+        if (metrics == null)
+            current.remove();
+        else
+            current.set(metrics);
+        return outer;
+    }
+
+    static void compare() {
+        SortMetrics m = current();
+        if (m != null)
+            m.comparisons.increment();
+    }
+
+    static void compare(long n) {
+        SortMetrics m = current();
+        if (m != null)
+            m.comparisons.add(n);
+    }
+
+    static void swap() {
+        SortMetrics m = current();
+        if (m != null)
+            m.swaps.increment();
+    }
+
+    static void move(long n) {
+        SortMetrics m = current();
+        if (m != null)
+            m.moves.add(n);
+    }
+
+    static void depth(int level) {
+        SortMetrics m = current();
+        if (m != null)
+            m.reach(level);
+    }
+
+    void reach(int level) {
+        int depth = maxDepth.get();
+        while (level > depth && !maxDepth.compareAndSet(depth, level))
+            depth = maxDepth.get();
+    }
+
+    int maxDepth() {
+        return maxDepth.get();
+    }
+
+    /**
+     * Start counting the sort of this thread into new counters.
+     * @return the counters this thread counted into before, to pass to {@link #stop(SortMetrics)}
+     */
+    static SortMetrics start() {
+        synchronized (SortMetrics.class) {
+            if (active++ == 0)
+                enabled = true;
+        }
+        return enter(new SortMetrics());
+    }
+
+    /**
+     * @return the counters of the sort since {@link #start()}
+     */
+    static SortMetrics stop(SortMetrics outer) {
+        SortMetrics metrics = enter(outer);
+        synchronized (SortMetrics.class) {
+            if (--active == 0)
+                enabled = false;
+        }
+        return metrics;
+    }
+}
+
+/**
+ * Decorates a sorter to report, for every sort, its size, wall time and {@link SortMetrics}
+ * as a line of JSON.
+ */
+class InstrumentedSorter implements Sorter {
+    private final Sorter sorter;
+    private final String type;
+    private final PrintStream out;
+
+    public InstrumentedSorter(Sorter sorter, String type, PrintStream out) {
+        this.sorter = sorter;
+        this.type = type;
+        this.out = out;
+    }
+
+    public void sort(double[] array) {
+        SortMetrics outer = SortMetrics.start();
+        long start = System.nanoTime();
+        try {
+            sorter.sort(array);
+        } finally {
+            long time = System.nanoTime() - start;
+            SortMetrics metrics = SortMetrics.stop(outer);
+            out.printf(Locale.ROOT, "{\"event\": \"sort\", \"sorter\": \"%s\", \"values\": %d, \"ms\": %.3f, "
+                            + "\"comparisons\": %d, \"swaps\": %d, \"moves\": %d, \"maxDepth\": %d}\n",
+                    type, array.length, time / 1e6, metrics.comparisons.sum(), metrics.swaps.sum(),
+                    metrics.moves.sum(), metrics.maxDepth());
+        }
+    }
+    /**
+     * Report another phase of a job, such as reading or writing, in the same format.
+     */
+    public static void log(PrintStream out, String event, String type, long values, long nanos) {
+        out.printf(Locale.ROOT, "{\"event\": \"%s\", \"type\": \"%s\", \"values\": %d, \"ms\": %.3f}\n",
+                event, type, values, nanos / 1e6);
+    }
+}
+
 class SorterFactory {
+    /**
+     * Every sorter type, in the order of the benchmarks.
+     */
+    public static final String[] TYPES = { "quick", "bubble", "shift", "intro", "radix", "natural", "parallel", "auto" };
+
+    /**
+     * @param type sorter type, optionally followed by ':' and options,
+     *             e.g. "parallel:8:4096" for 8 threads and a sequential threshold of 4096;
+     *             "metrics:" followed by a type instruments that sorter;
+     *             "auto:verbose" logs the choice of every sort
+     */
     public static Sorter getInstance(String type) throws IllegalArgumentException {
+        String[] options = new String[0];
+        if (type.contains(":")) {
+            options = type.substring(type.indexOf(':') + 1).split(":");
+            type = type.substring(0, type.indexOf(':'));
+        }
+
         Sorter sorter = null;
         switch (type.toLowerCase()) {
             case "quick":
@@ -100,6 +1376,32 @@ class SorterFactory {
             case "shift":
                 sorter = ShiftSorter.getInstance();
                 break;
+            case "intro":
+                sorter = IntroSorter.getInstance();
+                break;
+            case "radix":
+                sorter = RadixSorter.getInstance();
+                break;
+            case "natural":
+                sorter = NaturalMergeSorter.getInstance();
+                break;
+            case "auto":
+                sorter = (options.length > 0 && options[0].equals("verbose")) ? new AutoSorter(System.err, true)
+                        : AutoSorter.getInstance();
+                break;
+            case "metrics":
+                String inner = String.join(":", options);
+                sorter = new InstrumentedSorter(getInstance(inner), inner, System.err);
+                break;
+            case "parallel":
+                if (options.length == 0) {
+                    sorter = ParallelSorter.getInstance();
+                } else {
+                    int parallelism = Integer.parseInt(options[0]);
+                    int threshold = (options.length > 1) ? Integer.parseInt(options[1]) : ParallelSorter.DEFAULT_THRESHOLD;
+                    sorter = new ParallelSorter(parallelism, threshold);
+                }
+                break;
             default:
                 throw new IllegalArgumentException("Unresolved sort type: " + type);
         }
@@ -1,4 +1,6 @@
+import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
 public class Task4 {
     private static String sortType;
@@ -9,6 +11,18 @@ public class Task4 {
     private static String outputType;
     private static String outputFile;
 
+    private static String runSize;
+    private static String tempDir;
+
+    private static String threads;
+    private static String blockSize;
+
+    private static String manifest;
+    private static String workers;
+
+    private static String top;
+    private static String quantiles;
+
     public static void parseArgs(String[] args) {
         for (int i = 0; i < args.length; i++) {
             if (args[i].startsWith("-")) {
@@ -18,7 +32,8 @@ public class Task4 {
                         sortType = args[++i];
                         break;
                     case "i":
-                        String[] inputs = args[++i].split(",");
+                        // split at the first comma only, a glob may have more in braces
+                        String[] inputs = args[++i].split(",", 2);
                         inputType = inputs[0];
                         if (inputs.length > 1)
                             inputFile = inputs[1];
@@ -26,13 +41,37 @@ public class Task4 {
                             inputFile = args[++i];
                         break;
                     case "o":
-                        String[] outputs = args[++i].split(",");
+                        String[] outputs = args[++i].split(",", 2);
                         outputType = outputs[0];
                         if (outputs.length > 1)
                             outputFile = outputs[1];
                         else
                             outputFile = args[++i];
                         break;
+                    case "r":
+                        runSize = args[++i];
+                        break;
+                    case "t":
+                        tempDir = args[++i];
+                        break;
+                    case "p":
+                        String[] pipeline = args[++i].split(",");
+                        threads = pipeline[0];
+                        if (pipeline.length > 1)
+                            blockSize = pipeline[1];
+                        break;
+                    case "m":
+                        manifest = args[++i];
+                        break;
+                    case "w":
+                        workers = args[++i];
+                        break;
+                    case "k":
+                        top = args[++i];
+                        break;
+                    case "q":
+                        quantiles = args[++i];
+                        break;
                 }
             }
         }
@@ -40,18 +79,81 @@ public class Task4 {
 
     public static void main(String[] args) {
         try {
-            if (args.length < 6)
+            parseArgs(args);
+            boolean select = top != null || quantiles != null;
+            if (sortType == null && !select || manifest == null && (inputType == null || outputType == null))
                 throw new IOException("Usage: -s <sort type> -i <input type>,<input file name> "
+                        + "-o <output type>,<output file type> [-r <run size>|auto] [-t <temp dir>] "
+                        + "[-p <threads>|auto[,<block size>]]\n"
+                        + "   or: -s <sort type> -m <manifest> [-w <workers>]\n"
+                        + "   or: -s <sort type> -i <input type>,<input glob> -o <output type>,<output dir> [-w <workers>]\n"
+                        + "   or: -k <k>[,min|max] | -q <quantile>,... -i <input type>,<input file name> "
                         + "-o <output type>,<output file type>");
-            parseArgs(args);
 
-            DataReader reader = DataReaderFactory.newInstance(inputType, inputFile);
-            double[] array = reader.read();
+            if (select) {
+                DataReader reader = DataReaderFactory.newInstance(inputType, inputFile);
+                DataWriter writer = DataWriterFactory.newInstance(outputType, outputFile);
+                if (top != null) {
+                    String[] options = top.split(",");
+                    boolean largest = options.length > 1 && options[1].equals("max");
+                    try (ValueSource in = reader.open()) {
+                        writer.write(Selector.top(in, Integer.parseInt(options[0]), largest));
+                    }
+                } else {
+                    String[] options = quantiles.split(",");
+                    double[] q = new double[options.length];
+                    for (int i = 0; i < q.length; i++)
+                        q[i] = Double.parseDouble(options[i]);
+                    writer.write(Selector.quantiles(reader.read(), q));
+                }
+                return;
+            }
 
-            Sorter sorter = SorterFactory.getInstance(sortType);
-            sorter.sort(array);
+            if (manifest != null || Batch.isGlob(inputFile)) {
+                List<Batch.Job> jobs = (manifest != null) ? Batch.readManifest(new File(manifest))
+                        : Batch.glob(inputType, inputFile, outputType, outputFile);
+                int n = (workers == null) ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(workers);
+                Batch batch = new Batch(SorterFactory.getInstance(sortType), n);
+                batch.run(jobs, System.err);
+                batch.printSummary(System.err);
+                if (batch.getFailed() > 0)
+                    System.exit(1);
+                return;
+            }
 
+            DataReader reader = DataReaderFactory.newInstance(inputType, inputFile);
+            Sorter sorter = SorterFactory.getInstance(sortType);
             DataWriter writer = DataWriterFactory.newInstance(outputType, outputFile);
+
+            if (threads != null) {
+                int n = threads.equals("auto") ? Runtime.getRuntime().availableProcessors() : Integer.parseInt(threads);
+                int size = (blockSize == null) ? PipelinedSorter.DEFAULT_BLOCK_SIZE : Integer.parseInt(blockSize);
+                PipelinedSorter pipelined = new PipelinedSorter(sorter, n, size);
+                pipelined.sort(reader, writer);
+                pipelined.printTimes(System.err);
+                return;
+            }
+
+            if (runSize != null) {
+                int size = runSize.equals("auto") ? ExternalSorter.defaultRunSize() : Integer.parseInt(runSize);
+                File dir = (tempDir == null) ? null : new File(tempDir);
+                new ExternalSorter(sorter, size, dir).sort(reader, writer);
+                return;
+            }
+
+            if (sorter instanceof InstrumentedSorter) {
+                long start = System.nanoTime();
+                double[] array = reader.read();
+                InstrumentedSorter.log(System.err, "read", inputType, array.length, System.nanoTime() - start);
+                sorter.sort(array);
+                start = System.nanoTime();
+                writer.write(array);
+                InstrumentedSorter.log(System.err, "write", outputType, array.length, System.nanoTime() - start);
+                return;
+            }
+
+            double[] array = reader.read();
+            sorter.sort(array);
             writer.write(array);
         }
         catch (Exception e) {
@@ -55,6 +55,8 @@ public abstract class Command {
 
     public void closeOutputStream() {
         try {
+            if (out != null)
+                out.flush();
             if (os != null && !os.equals(System.out) && !os.equals(System.err))
                 os.close();
         } catch (Exception e) {}
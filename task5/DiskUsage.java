@@ -0,0 +1,135 @@
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Walks a directory tree once on a fork-join pool and sums the apparent sizes bottom-up.
+ * Every entry costs a single attribute read, symbolic links are not followed.
+ * With a {@link DuIndex} the directories that have not changed since the last walk are not listed again.
+ */
+public class DiskUsage {
+    /**
+     * Apparent size of a directory entry itself, in kilobytes.
+     */
+    public static final int DIR_SIZE = 4;
+
+    private final ForkJoinPool pool;
+    private final PrintWriter err;
+    private final DuIndex index;
+
+    public DiskUsage(ForkJoinPool pool, PrintWriter err) {
+        this(pool, err, null);
+    }
+
+    /**
+     * @param index the index to read and update, or <tt>null</tt> to list every directory
+     */
+    public DiskUsage(ForkJoinPool pool, PrintWriter err, DuIndex index) {
+        this.pool = pool;
+        this.err = err;
+        this.index = index;
+    }
+
+    /**
+     * A walked file or directory with the totals of its subtree.
+     */
+    public static class Node {
+        public final Path path;
+        public final boolean directory;
+        public final List<Node> children = new ArrayList<>();
+        private long bytes;
+        private long dirs;
+
+        Node(Path path, boolean directory) {
+            this.path = path;
+            this.directory = directory;
+        }
+
+        /**
+         * @return total size of the subtree in kilobytes, counting {@link #DIR_SIZE} per directory
+         */
+        public long getSize() {
+            return Math.round(DIR_SIZE * dirs + bytes / 1024.0);
+        }
+    }
+
+    public Node walk(Path path) throws IOException {
+        BasicFileAttributes attrs = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attrs.isDirectory()) {
+            Node node = new Node(path, false);
+            node.bytes = attrs.size();
+            return node;
+        }
+        return pool.invoke(new DirTask(path, attrs));
+    }
+
+    private class DirTask extends RecursiveTask<Node> {
+        private static final long serialVersionUID = 1L;
+
+        private final Path dir;
+        private final BasicFileAttributes dirAttrs;
+
+        DirTask(Path dir, BasicFileAttributes dirAttrs) {
+            this.dir = dir;
+            this.dirAttrs = dirAttrs;
+        }
+
+        @Override protected Node compute() {
+            Node node = new Node(dir, true);
+            node.dirs = 1;
+
+            List<DirTask> subtasks = new ArrayList<>();
+            DuIndex.Entry entry = (index == null) ? null : index.get(dir, dirAttrs);
+            if (entry != null) {
+                node.bytes = entry.bytes;
+                for (String name : entry.dirs) {
+                    Path sub = dir.resolve(name);
+                    BasicFileAttributes attrs = readAttributes(sub);
+                    if (attrs != null && attrs.isDirectory())
+                        subtasks.add(new DirTask(sub, attrs));
+                }
+            } else {
+                List<String> names = new ArrayList<>();
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+                    for (Path sub : stream) {
+                        BasicFileAttributes attrs = readAttributes(sub);
+                        if (attrs == null)
+                            continue;
+                        if (attrs.isDirectory()) {
+                            subtasks.add(new DirTask(sub, attrs));
+                            names.add(sub.getFileName().toString());
+                        } else {
+                            node.bytes += attrs.size();
+                        }
+                    }
+                    if (index != null)
+                        index.put(dir, dirAttrs, node.bytes, names);
+                } catch (IOException e) {
+                    err.println("du: cannot read directory '" + dir + "': " + e.getMessage());
+                } catch (DirectoryIteratorException e) {
+                    err.println("du: cannot read directory '" + dir + "': " + e.getCause().getMessage());
+                }
+            }
+
+            invokeAll(subtasks);
+            for (DirTask t : subtasks) {
+                Node child = t.join();
+                node.children.add(child);
+                node.bytes += child.bytes;
+                node.dirs += child.dirs;
+            }
+            return node;
+        }
+
+        private BasicFileAttributes readAttributes(Path path) {
+            try {
+                return Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+            } catch (IOException e) {
+                err.println("du: cannot access '" + path + "': " + e.getMessage());
+                return null;
+            }
+        }
+    }
+}
@@ -0,0 +1,145 @@
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * On-disk index of directory contents used by {@link DiskUsage} to skip unchanged directories.
+ * For every directory it keeps the file key (device and inode) and the modification time,
+ * the total size of the files directly inside and the names of the subdirectories.
+ * While a directory has the same file key and modification time, no entry was added, removed or renamed in it,
+ * so it is not listed again; its subdirectories are still checked one by one.
+ * Files modified in place do not change the modification time of their directory and are not noticed,
+ * so the sizes it gives are approximate; {@link Shell.Du} only uses it with '--index'.
+ *
+ * The index may be shared by several shells: it is replaced atomically,
+ * and updates are merged into the latest version under an exclusive file lock.
+ */
+public class DuIndex {
+    private static final int MAGIC = 0x44554958;
+    private static final int VERSION = 1;
+
+    private final Path file;
+    private final Path lockFile;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, Entry> updated = new ConcurrentHashMap<>();
+
+    public static class Entry {
+        public final String key;
+        public final long mtime;
+        public final long bytes;
+        public final String[] dirs;
+
+        Entry(String key, long mtime, long bytes, String[] dirs) {
+            this.key = key;
+            this.mtime = mtime;
+            this.bytes = bytes;
+            this.dirs = dirs;
+        }
+    }
+
+    private DuIndex(Path file) {
+        this.file = file;
+        this.lockFile = file.resolveSibling(file.getFileName() + ".lock");
+    }
+
+    /**
+     * Load the index, an unreadable or missing one gives an empty index.
+     */
+    public static DuIndex load(Path file) {
+        DuIndex index = new DuIndex(file);
+        index.entries.putAll(read(file));
+        return index;
+    }
+
+    /**
+     * @return the entry of the directory, or <tt>null</tt> if it has changed since it was indexed
+     */
+    public Entry get(Path dir, BasicFileAttributes attrs) {
+        Object key = attrs.fileKey();
+        if (key == null)
+            return null;
+        Entry e = entries.get(dir.toString());
+        if (e == null || e.mtime != attrs.lastModifiedTime().toMillis() || !e.key.equals(key.toString()))
+            return null;
+        return e;
+    }
+
+    public void put(Path dir, BasicFileAttributes attrs, long bytes, List<String> dirs) {
+        Object key = attrs.fileKey();
+        if (key == null)
+            return;
+        Entry e = new Entry(key.toString(), attrs.lastModifiedTime().toMillis(), bytes, dirs.toArray(new String[0]));
+        entries.put(dir.toString(), e);
+        updated.put(dir.toString(), e);
+    }
+
+    /**
+     * Merge the updated entries into the index on disk.
+     */
+    public void save() throws IOException {
+        if (updated.isEmpty())
+            return;
+
+        // file locks are held by the whole JVM, so shells of the same process are serialized here
+        synchronized (DuIndex.class) {
+            // the lock is released when the channel is closed
+            try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                channel.lock();
+                Map<String, Entry> merged = read(file);
+                merged.putAll(updated);
+
+                Path tmp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+                try {
+                    write(tmp, merged);
+                    Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    Files.deleteIfExists(tmp);
+                }
+            }
+        }
+        updated.clear();
+    }
+
+    private static Map<String, Entry> read(Path file) {
+        Map<String, Entry> map = new HashMap<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return map;
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                String key = in.readUTF();
+                long mtime = in.readLong();
+                long bytes = in.readLong();
+                String[] dirs = new String[in.readInt()];
+                for (int j = 0; j < dirs.length; j++)
+                    dirs[j] = in.readUTF();
+                map.put(path, new Entry(key, mtime, bytes, dirs));
+            }
+        } catch (IOException e) {
+            map.clear();
+        }
+        return map;
+    }
+
+    private static void write(Path file, Map<String, Entry> map) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(map.size());
+            for (Map.Entry<String, Entry> me : map.entrySet()) {
+                Entry e = me.getValue();
+                out.writeUTF(me.getKey());
+                out.writeUTF(e.key);
+                out.writeLong(e.mtime);
+                out.writeLong(e.bytes);
+                out.writeInt(e.dirs.length);
+                for (String d : e.dirs)
+                    out.writeUTF(d);
+            }
+        }
+    }
+}
@@ -0,0 +1,167 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Streams the bytes appended to files, as 'tail -f' does.
+ * Changes are waited for with a {@link WatchService} on the parent directories,
+ * and files are polled at a fixed interval when no watch service is available or no event arrives.
+ * A truncated file is read again from its beginning, a replaced (rotated) file is reopened.
+ */
+public class Follower {
+    public static final long POLL_INTERVAL = 1000;
+    private static final int BLOCK_SIZE = 8192;
+
+    private final List<Target> targets = new ArrayList<>();
+    private final OutputStream os;
+    private final PrintWriter err;
+    private final boolean headers;
+    private Target last;
+
+    public Follower(OutputStream os, PrintWriter err, boolean headers) {
+        this.os = os;
+        this.err = err;
+        this.headers = headers;
+    }
+
+    /**
+     * Follow the file starting at <code>offset</code>.
+     */
+    public void add(Path path, long offset) {
+        Target t = new Target(path, offset);
+        targets.add(t);
+        last = t;
+    }
+
+    /**
+     * Follow the files until the thread is interrupted or the output is closed.
+     */
+    public void follow() throws IOException {
+        WatchService watcher = null;
+        try {
+            watcher = FileSystems.getDefault().newWatchService();
+            Set<Path> dirs = new HashSet<>();
+            for (Target t : targets)
+                dirs.add(t.path.toAbsolutePath().getParent());
+            for (Path dir : dirs)
+                dir.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException | UnsupportedOperationException e) {
+            close(watcher);
+            watcher = null;
+        }
+
+        try {
+            // without new data nothing is written, so a closed pipe would go unnoticed
+            while (!Thread.currentThread().isInterrupted() && !Pipe.isReaderClosed(os)) {
+                for (Target t : targets)
+                    t.update();
+                if (watcher == null) {
+                    Thread.sleep(POLL_INTERVAL);
+                    continue;
+                }
+                WatchKey key = watcher.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+                while (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                    key = watcher.poll();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close(watcher);
+            for (Target t : targets)
+                t.close();
+        }
+    }
+
+    private static void close(Closeable c) {
+        try {
+            if (c != null)
+                c.close();
+        } catch (IOException e) {}
+    }
+
+    private class Target {
+        private final Path path;
+        private FileChannel channel;
+        private Object fileKey;
+        private long pos;
+
+        Target(Path path, long pos) {
+            this.path = path;
+            this.pos = pos;
+        }
+
+        /**
+         * Print what was appended since the last call and detect truncation and rotation.
+         */
+        void update() throws IOException {
+            if (channel == null && !open())
+                return;
+
+            long size = channel.size();
+            if (size < pos) {
+                err.println("tail: " + path + ": file truncated");
+                pos = 0;
+            }
+            copy(size);
+
+            BasicFileAttributes attrs;
+            try {
+                attrs = Files.readAttributes(path, BasicFileAttributes.class);
+            } catch (IOException e) {
+                return; // removed, keep reading the open file until a new one appears
+            }
+            if (fileKey != null && !fileKey.equals(attrs.fileKey())) {
+                copy(channel.size());
+                err.println("tail: '" + path + "' has been replaced; following new file");
+                close();
+                pos = 0;
+                if (open())
+                    copy(channel.size());
+            }
+        }
+
+        private boolean open() {
+            try {
+                channel = FileChannel.open(path, StandardOpenOption.READ);
+                fileKey = Files.readAttributes(path, BasicFileAttributes.class).fileKey();
+                return true;
+            } catch (IOException e) {
+                channel = null;
+                return false;
+            }
+        }
+
+        private void copy(long to) throws IOException {
+            if (pos >= to)
+                return;
+            if (headers && last != this)
+                os.write(("\n==> " + path.getFileName() + " <==\n").getBytes());
+            last = this;
+
+            ByteBuffer buf = ByteBuffer.allocate(BLOCK_SIZE);
+            while (pos < to) {
+                buf.clear();
+                buf.limit((int) Math.min(BLOCK_SIZE, to - pos));
+                int n = channel.read(buf, pos);
+                if (n < 0)
+                    break;
+                os.write(buf.array(), 0, n);
+                pos += n;
+            }
+            os.flush();
+        }
+
+        void close() {
+            Follower.close(channel);
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Compares the throughput of the grep engines on a file:
+ * the Scanner and <code>String.contains</code> path, the byte-level literal search on one thread
+ * and the byte-level literal search on parallel chunks.
+ */
+public class GrepBenchmark {
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MEASURE_ITERATIONS = 5;
+
+    interface Engine {
+        void grep(File file, String pattern, PrintWriter out) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.err.println("Usage: java GrepBenchmark PATTERN FILE");
+            System.exit(1);
+        }
+        String pattern = args[0];
+        File file = new File(args[1]);
+
+        bench("scanner", file, pattern, GrepBenchmark::scanner);
+        bench("literal", file, pattern, (f, p, out) ->
+                new MappedGrep(new LiteralSearcher(p, Charset.defaultCharset()), null).grep(f, out));
+        bench("literal-parallel", file, pattern, (f, p, out) ->
+                new MappedGrep(new LiteralSearcher(p, Charset.defaultCharset()), ForkJoinPool.commonPool()).grep(f, out));
+    }
+
+    private static void scanner(File file, String pattern, PrintWriter out) throws IOException {
+        try (Scanner s = new Scanner(file)) {
+            while (s.hasNextLine()) {
+                String line = s.nextLine();
+                if (line.contains(pattern))
+                    out.println(line);
+            }
+        }
+    }
+
+    private static void bench(String name, File file, String pattern, Engine engine) throws Exception {
+        PrintWriter out = new PrintWriter(new OutputStream() {
+            @Override public void write(int b) {}
+            @Override public void write(byte[] b, int off, int len) {}
+        });
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++)
+            engine.grep(file, pattern, out);
+
+        long total = 0;
+        for (int i = 0; i < MEASURE_ITERATIONS; i++) {
+            long start = System.nanoTime();
+            engine.grep(file, pattern, out);
+            total += System.nanoTime() - start;
+        }
+
+        double ms = total / 1e6 / MEASURE_ITERATIONS;
+        double mbs = file.length() / 1048576.0 / (ms / 1000);
+        System.out.printf("%-18s %10.1f ms/op %10.1f MB/s\n", name, ms, mbs);
+    }
+}
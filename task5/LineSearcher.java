@@ -0,0 +1,237 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+
+/**
+ * Finds matching lines in a region of a byte buffer.
+ * Only the lines that match are decoded into strings.
+ */
+public abstract class LineSearcher {
+    protected final Charset charset;
+
+    protected LineSearcher(Charset charset) {
+        this.charset = charset;
+    }
+
+    /**
+     * @return a position inside the first matching line of <code>[from, to)</code>, or -1 if there is none
+     */
+    protected abstract int find(ByteBuffer buf, int from, int to);
+
+    /**
+     * @return true if the already decoded line matches
+     */
+    public abstract boolean matches(String line);
+
+    /**
+     * Add every matching line of <code>[from, to)</code> to <code>matches</code>, in order.
+     */
+    public void search(ByteBuffer buf, int from, int to, List<String> matches) {
+        while (from < to) {
+            int m = find(buf, from, to);
+            if (m < 0)
+                return;
+            int start = m;
+            while (start > from && buf.get(start - 1) != '\n')
+                start--;
+            int end = m;
+            while (end < to && buf.get(end) != '\n')
+                end++;
+            matches.add(decode(buf, start, end));
+            from = end + 1;
+        }
+    }
+
+    protected String decode(ByteBuffer buf, int start, int end) {
+        if (end > start && buf.get(end - 1) == '\r')
+            end--;
+        byte[] bytes = new byte[end - start];
+        for (int i = 0; i < bytes.length; i++)
+            bytes[i] = buf.get(start + i);
+        return new String(bytes, charset);
+    }
+}
+
+/**
+ * Searches a literal pattern on raw bytes with the Boyer-Moore-Horspool algorithm.
+ */
+class LiteralSearcher extends LineSearcher {
+    private final String literal;
+    private final byte[] pattern;
+    private final int[] shift = new int[256];
+
+    public LiteralSearcher(String pattern, Charset charset) {
+        super(charset);
+        this.literal = pattern;
+        this.pattern = pattern.getBytes(charset);
+
+        int m = this.pattern.length;
+        for (int i = 0; i < shift.length; i++)
+            shift[i] = Math.max(m, 1);
+        for (int i = 0; i < m - 1; i++)
+            shift[this.pattern[i] & 0xff] = m - 1 - i;
+    }
+
+    @Override protected int find(ByteBuffer buf, int from, int to) {
+        int last = pattern.length - 1;
+        if (last < 0)
+            return (from < to) ? from : -1;
+
+        byte tail = pattern[last];
+        for (int i = from; i + last < to; ) {
+            byte b = buf.get(i + last);
+            if (b == tail) {
+                int j = last - 1;
+                while (j >= 0 && buf.get(i + j) == pattern[j])
+                    j--;
+                if (j < 0)
+                    return i;
+            }
+            i += shift[b & 0xff];
+        }
+        return -1;
+    }
+
+    @Override public boolean matches(String line) {
+        return line.contains(literal);
+    }
+}
+
+/**
+ * Decodes every line and tests it with a predicate. Used when a pattern cannot be matched on bytes.
+ */
+class PredicateSearcher extends LineSearcher {
+    private final Predicate<String> filter;
+
+    public PredicateSearcher(Predicate<String> filter, Charset charset) {
+        super(charset);
+        this.filter = filter;
+    }
+
+    @Override protected int find(ByteBuffer buf, int from, int to) {
+        int start = from;
+        while (start < to) {
+            int end = start;
+            while (end < to && buf.get(end) != '\n')
+                end++;
+            if (filter.test(decode(buf, start, end)))
+                return start;
+            start = end + 1;
+        }
+        return -1;
+    }
+
+    @Override public boolean matches(String line) {
+        return filter.test(line);
+    }
+}
+
+/**
+ * Searches several literal patterns on raw bytes in a single pass with the Aho-Corasick automaton.
+ * The automaton is built as a full transition table, so every byte costs one lookup.
+ */
+class AhoCorasickSearcher extends LineSearcher {
+    private final int[] next;
+    private final boolean[] terminal;
+
+    public AhoCorasickSearcher(Collection<String> patterns, Charset charset) {
+        super(charset);
+
+        int maxStates = 1;
+        List<byte[]> bytes = new ArrayList<>();
+        for (String p : patterns) {
+            byte[] b = p.getBytes(charset);
+            bytes.add(b);
+            maxStates += b.length;
+        }
+
+        int[] trie = new int[maxStates * 256];
+        Arrays.fill(trie, -1);
+        boolean[] out = new boolean[maxStates];
+        int states = 1;
+        for (byte[] b : bytes) {
+            int s = 0;
+            for (byte c : b) {
+                int t = s * 256 + (c & 0xff);
+                if (trie[t] < 0)
+                    trie[t] = states++;
+                s = trie[t];
+            }
+            out[s] = true;
+        }
+
+        // resolve failure links breadth-first into a complete transition table
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        for (int c = 0; c < 256; c++) {
+            int s = trie[c];
+            if (s < 0) {
+                trie[c] = 0;
+            } else {
+                fail[s] = 0;
+                queue[tail++] = s;
+            }
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            out[s] |= out[fail[s]];
+            for (int c = 0; c < 256; c++) {
+                int t = trie[s * 256 + c];
+                if (t < 0) {
+                    trie[s * 256 + c] = trie[fail[s] * 256 + c];
+                } else {
+                    fail[t] = trie[fail[s] * 256 + c];
+                    queue[tail++] = t;
+                }
+            }
+        }
+
+        next = Arrays.copyOf(trie, states * 256);
+        terminal = Arrays.copyOf(out, states);
+    }
+
+    @Override protected int find(ByteBuffer buf, int from, int to) {
+        if (terminal[0])
+            return (from < to) ? from : -1;
+
+        int s = 0;
+        for (int i = from; i < to; i++) {
+            s = next[s * 256 + (buf.get(i) & 0xff)];
+            if (terminal[s])
+                return i;
+        }
+        return -1;
+    }
+
+    @Override public boolean matches(String line) {
+        byte[] b = line.getBytes(charset);
+        return find(ByteBuffer.wrap(b), 0, b.length) >= 0;
+    }
+}
+
+/**
+ * Keeps the most recently used compiled patterns, so a repeated command does not recompile them.
+ */
+class PatternCache {
+    private final Map<String, Pattern> cache;
+
+    public PatternCache(final int capacity) {
+        cache = new LinkedHashMap<String, Pattern>(16, 0.75F, true) {
+            @Override protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    public synchronized Pattern compile(String regex) {
+        Pattern p = cache.get(regex);
+        if (p == null) {
+            p = Pattern.compile(regex);
+            cache.put(regex, p);
+        }
+        return p;
+    }
+}
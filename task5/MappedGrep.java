@@ -0,0 +1,128 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Searches a file by memory-mapping it, splitting it at line boundaries into chunks
+ * and scanning the chunks with a {@link LineSearcher}, in parallel on a fork-join pool
+ * or one after another on the calling thread.
+ * Matching lines are printed in file order.
+ */
+public class MappedGrep {
+    public static final int DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private final LineSearcher searcher;
+    private final int chunkSize;
+    private final ForkJoinPool pool;
+
+    /**
+     * @param pool the pool to scan chunks on, or <tt>null</tt> to scan them on the calling thread
+     */
+    public MappedGrep(LineSearcher searcher, ForkJoinPool pool) {
+        this(searcher, DEFAULT_CHUNK_SIZE, pool);
+    }
+
+    public MappedGrep(LineSearcher searcher, int chunkSize, ForkJoinPool pool) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("Illegal chunk size: " + chunkSize);
+        this.searcher = searcher;
+        this.chunkSize = chunkSize;
+        this.pool = pool;
+    }
+
+    /**
+     * Print every matching line of the file.
+     * At most two chunks per worker are in flight, so memory does not grow with the file size.
+     */
+    public void grep(File file, PrintWriter out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            int window = (pool == null) ? 1 : Math.max(2, pool.getParallelism() * 2);
+            Deque<ForkJoinTask<List<String>>> tasks = new ArrayDeque<>(window);
+
+            try {
+                long start = 0;
+                while (start < size || !tasks.isEmpty()) {
+                    while (start < size && tasks.size() < window) {
+                        long end = nextLineBoundary(channel, start + chunkSize, size);
+                        ChunkTask task = new ChunkTask(channel, start, end);
+                        if (pool == null)
+                            task.quietlyInvoke();
+                        else
+                            pool.submit(task);
+                        tasks.add(task);
+                        start = end;
+                    }
+                    for (String line : join(tasks.poll()))
+                        out.println(line);
+                }
+            } finally {
+                for (ForkJoinTask<List<String>> t : tasks)
+                    t.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * @return the position just after the first line feed at or after <code>pos</code>
+     */
+    private static long nextLineBoundary(FileChannel channel, long pos, long size) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4096);
+        while (pos < size) {
+            buf.clear();
+            int n = channel.read(buf, pos);
+            if (n <= 0)
+                break;
+            for (int i = 0; i < n; i++)
+                if (buf.get(i) == '\n')
+                    return pos + i + 1;
+            pos += n;
+        }
+        return size;
+    }
+
+    private static List<String> join(ForkJoinTask<List<String>> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("grep interrupted");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof UncheckedIOException)
+                throw ((UncheckedIOException) cause).getCause();
+            throw new IOException(cause);
+        }
+    }
+
+    private class ChunkTask extends RecursiveTask<List<String>> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        ChunkTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override protected List<String> compute() {
+            MappedByteBuffer buf;
+            try {
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+
+            List<String> matches = new ArrayList<>();
+            searcher.search(buf, 0, buf.limit(), matches);
+            return matches;
+        }
+    }
+}
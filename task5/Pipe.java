@@ -0,0 +1,229 @@
+import java.io.*;
+import java.lang.reflect.Method;
+import java.util.*;
+import java.util.concurrent.ThreadFactory;
+import javafx.util.Pair;
+
+/**
+ * A bounded in-memory ring buffer connecting the output of one command to the input of the next.
+ * Writers block while the buffer is full, readers block while it is empty.
+ * Once the reading side is closed, any further write fails with {@link BrokenPipeException}.
+ */
+public class Pipe {
+    public static final int DEFAULT_CAPACITY = 64 * 1024;
+
+    private final byte[] buffer;
+    private int head;
+    private int count;
+
+    private boolean writerClosed;
+    private boolean readerClosed;
+
+    private final InputStream is = new PipeInputStream();
+    private final OutputStream os = new PipeOutputStream();
+
+    public Pipe() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public Pipe(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Illegal capacity: " + capacity);
+        buffer = new byte[capacity];
+    }
+
+    public InputStream getInputStream() { return is; }
+    public OutputStream getOutputStream() { return os; }
+
+    /**
+     * @return whether <code>os</code> is the writing side of a pipe whose reader is closed,
+     *         for writers that may wait a long time between writes
+     */
+    public static boolean isReaderClosed(OutputStream os) {
+        return os instanceof PipeOutputStream && ((PipeOutputStream) os).isReaderClosed();
+    }
+
+    private synchronized void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (readerClosed)
+                throw new BrokenPipeException();
+            if (writerClosed)
+                throw new IOException("Pipe closed");
+            if (count == buffer.length) {
+                await();
+                continue;
+            }
+            int tail = (head + count) % buffer.length;
+            int n = Math.min(len, Math.min(buffer.length - count, buffer.length - tail));
+            System.arraycopy(b, off, buffer, tail, n);
+            count += n;
+            off += n;
+            len -= n;
+            notifyAll();
+        }
+    }
+
+    private synchronized int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        while (count == 0) {
+            if (writerClosed || readerClosed)
+                return -1;
+            await();
+        }
+        int n = Math.min(len, Math.min(count, buffer.length - head));
+        System.arraycopy(buffer, head, b, off, n);
+        head = (head + n) % buffer.length;
+        count -= n;
+        notifyAll();
+        return n;
+    }
+
+    private synchronized int available() {
+        return count;
+    }
+
+    private synchronized void closeWriter() {
+        writerClosed = true;
+        notifyAll();
+    }
+
+    private synchronized void closeReader() {
+        readerClosed = true;
+        count = 0;
+        notifyAll();
+    }
+
+    private void await() throws InterruptedIOException {
+        try {
+            wait();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Pipe interrupted");
+        }
+    }
+
+    private class PipeInputStream extends InputStream {
+        @Override public int read() throws IOException {
+            byte[] b = new byte[1];
+            return (Pipe.this.read(b, 0, 1) == -1) ? -1 : b[0] & 0xff;
+        }
+
+        @Override public int read(byte[] b, int off, int len) throws IOException {
+            return Pipe.this.read(b, off, len);
+        }
+
+        @Override public int available() {
+            return Pipe.this.available();
+        }
+
+        @Override public void close() {
+            closeReader();
+        }
+    }
+
+    private class PipeOutputStream extends OutputStream {
+        @Override public void write(int b) throws IOException {
+            Pipe.this.write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        @Override public void write(byte[] b, int off, int len) throws IOException {
+            Pipe.this.write(b, off, len);
+        }
+
+        @Override public void close() {
+            closeWriter();
+        }
+
+        boolean isReaderClosed() {
+            synchronized (Pipe.this) {
+                return readerClosed;
+            }
+        }
+    }
+
+    /**
+     * Thrown when a command writes into a pipe whose reader has already finished.
+     * It is unchecked so that it is not swallowed by the <code>PrintWriter</code> of a command
+     * and terminates the upstream command the same way SIGPIPE does.
+     */
+    public static class BrokenPipeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        public BrokenPipeException() {
+            super("Broken pipe");
+        }
+    }
+}
+
+/**
+ * Runs every command of a pipeline concurrently, each one on its own thread.
+ * Virtual threads are used when the running JVM supports them.
+ */
+class Pipeline {
+    public static final int BROKEN_PIPE_STATUS = 141;
+
+    private static final ThreadFactory threadFactory = newThreadFactory();
+
+    private final List<Pair<Command, String>> stages;
+
+    public Pipeline(List<Pair<Command, String>> stages) {
+        this.stages = stages;
+    }
+
+    /**
+     * @return the exit status of the last command of the pipeline
+     */
+    public int run() throws Exception {
+        if (stages.size() == 1) {
+            Pair<Command, String> p = stages.get(0);
+            return p.getKey().perform(p.getValue());
+        }
+
+        int n = stages.size();
+        int[] results = new int[n];
+        Exception[] errors = new Exception[n];
+        Thread[] threads = new Thread[n];
+        for (int i = 0; i < n; i++) {
+            final int k = i;
+            threads[k] = threadFactory.newThread(() -> {
+                Command cmd = stages.get(k).getKey();
+                try {
+                    results[k] = cmd.perform(stages.get(k).getValue());
+                } catch (Pipe.BrokenPipeException e) {
+                    results[k] = BROKEN_PIPE_STATUS;
+                } catch (Exception e) {
+                    results[k] = 1;
+                    errors[k] = e;
+                } finally {
+                    // closing the input cancels the upstream command, closing the output signals EOF downstream
+                    cmd.closeInputStream();
+                    cmd.closeOutputStream();
+                }
+            });
+            threads[k].start();
+        }
+
+        for (Thread t : threads)
+            t.join();
+
+        for (Exception e : errors)
+            if (e != null)
+                throw e;
+        return results[n - 1];
+    }
+
+    private static ThreadFactory newThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            Method factory = Class.forName("java.lang.Thread$Builder").getMethod("factory");
+            return (ThreadFactory) factory.invoke(builder);
+        } catch (Exception e) {
+            return r -> {
+                Thread t = new Thread(r);
+                t.setDaemon(true);
+                return t;
+            };
+        }
+    }
+}
@@ -1,8 +1,14 @@
 import java.io.*;
+import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.regex.*;
 import javafx.util.Pair;
 import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.concurrent.ForkJoinPool;
 
 public class Shell {
     public static final String initPath = System.getProperty("user.dir");
@@ -18,6 +24,9 @@ public class Shell {
     public static final String lastResult = "?";
     private Map<String, String> vars = new HashMap<>();
 
+    private static final Pattern argPattern = Pattern.compile("'(.*?)'|\"(.*?)\"|\\S+");
+    private final PatternCache patternCache = new PatternCache(64);
+
     public Shell(InputStream is, OutputStream os, OutputStream eos) throws Exception {
         this.is = is;
         this.os = os;
@@ -38,10 +47,8 @@ public class Shell {
     public void run(String str) {
         try {
             Parser parser = new Parser();
-            for (Pair<Command, String> p : parser.parse(str)) {
-                Command cmd = p.getKey();
-                String param = p.getValue();
-                int result = cmd.perform(param);
+            for (List<Pair<Command, String>> pipeline : parser.parse(str)) {
+                int result = new Pipeline(pipeline).run();
                 vars.put(lastResult, Integer.toString(result));
                 if (result != 0)
                     return;
@@ -52,32 +59,29 @@ public class Shell {
     }
 
     public class Parser {
-        private List<Pair<Command, String>> list = new ArrayList<>();
+        private List<List<Pair<Command, String>>> list = new ArrayList<>();
 
-        public List<Pair<Command, String>> parse(String str) throws Exception {
+        /**
+         * Split the line into pipelines separated by '&&', each pipeline being a list of piped commands.
+         */
+        public List<List<Pair<Command, String>>> parse(String str) throws Exception {
             list.clear();
             str = str.trim();
             vars.putAll(parseVars(str));
             str = substituteVars(str, vars);
 
-            List<Pair<Command, String>> pipes = new ArrayList<>();
             Piper pipe = new Piper();
             String[] args = str.split(" && ");
             for (String a : args) {
-                String[] pa = a.split(" \\| ");
-                if (pa.length == 1)
-                    list.add(parseCommand(pa[0]));
-                else {
-                    for (String p : pa)
-                        pipes.add(parseCommand(p));
-                }
+                List<Pair<Command, String>> pipes = new ArrayList<>();
+                for (String p : a.split(" \\| "))
+                    pipes.add(parseCommand(p));
                 for (int i = 0; i < pipes.size() - 1; i++) {
                     Pair<Command, String> lhs = pipes.get(i);
                     Pair<Command, String> rhs = pipes.get(i+1);
                     pipe.pipe(lhs, rhs);
                 }
-                list.addAll(pipes);
-                pipes.clear();
+                list.add(pipes);
             }
             return list;
         }
@@ -172,9 +176,21 @@ public class Shell {
     }
 
     /**
-     * List information about the files
+     * List information about the files.
+     * Entries are printed as they are read from the directory, unless they are sorted
+     * by size ('-S') or modification time ('-t'); '-l' prints the long listing format
+     * and '-a' does not ignore hidden entries. Attributes are only read when needed, in one call per entry.
+     * With '--sort-limit N' at most N entries are sorted in memory.
      */
     public class Ls extends Command {
+        private boolean printHidden;
+        private boolean longFormat;
+        private char sortKey;
+        private int sortLimit = SortedListing.DEFAULT_LIMIT;
+
+        private final boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        private final SimpleDateFormat timeFormat = new SimpleDateFormat("MMM dd HH:mm", Locale.ENGLISH);
+
         public Ls() {
             super(Shell.this.is, Shell.this.os, Shell.this.eos);
         }
@@ -184,41 +200,124 @@ public class Shell {
         }
 
         @Override public int perform(String param) throws Exception {
-            out = new PrintWriter(os, true);
-            boolean printHidden = false;
-            if (param == null) {
-                for (File file : currentDir.listFiles())
-                    printFileName(file, printHidden);
-                return 0;
+            out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(os)));
+            List<String> pathes = new ArrayList<>();
+
+            String[] args = (param == null) ? new String[0] : param.split(" ");
+            for (int i = 0; i < args.length; i++) {
+                String arg = args[i];
+                if (arg.equals("--sort-limit")) {
+                    try {
+                        sortLimit = Integer.parseInt(args[++i]);
+                    } catch (RuntimeException e) {
+                        sortLimit = 0;
+                    }
+                    if (sortLimit <= 0) {
+                        err.println("ls: invalid sort limit");
+                        return 2;
+                    }
+                } else if (arg.startsWith("-") && arg.length() > 1) {
+                    for (char c : arg.substring(1).toCharArray()) {
+                        switch (c) {
+                            case 'a':
+                                printHidden = true;
+                                break;
+                            case 'l':
+                                longFormat = true;
+                                break;
+                            case 'S':
+                            case 't':
+                                sortKey = c;
+                                break;
+                            default:
+                                err.println("ls: invalid option -- '" + c + "'");
+                                return 2;
+                        }
+                    }
+                } else {
+                    pathes.add(arg);
+                }
             }
 
-            String[] args = param.split(" ");
-            for (String path : args) {
-                File dir = path.startsWith("/") ? new File(path) : new File(currentDir, path);
-                if (!dir.exists()) {
-                    err.println("ls: cannot access " + path + ": No such file or directory");
-                    return 1;
+            try {
+                if (pathes.isEmpty()) {
+                    list(currentDir.toPath());
+                    return 0;
                 }
 
-                if (dir.isDirectory()) {
-                    if (args.length > 1)
-                        out.println(dir.getName() + ":");
-                    for (File file : dir.listFiles()) {
-                        printFileName(file, printHidden);
+                for (String path : pathes) {
+                    Path dir = path.startsWith("/") ? Paths.get(path) : currentDir.toPath().resolve(path);
+                    BasicFileAttributes attrs;
+                    try {
+                        // like the 'ls' it replaces, a link given as argument is followed
+                        attrs = readAttributes(dir);
+                    } catch (IOException e) {
+                        err.println("ls: cannot access " + path + ": No such file or directory");
+                        return 1;
+                    }
+
+                    if (attrs.isDirectory()) {
+                        if (pathes.size() > 1)
+                            out.println(dir.getFileName() + ":");
+                        list(dir);
+                    } else {
+                        out.println(format(dir, attrs)); // print even if a file is hidden
                     }
-                } else {
-                    out.println(dir.getName()); // print even if a file is hidden
                 }
+            } finally {
+                out.flush();
             }
             closeInputStream();
             closeOutputStream();
             return 0;
         }
 
-        private void printFileName(File file, boolean printHidden) {
-            if (file.isHidden() && !printHidden)
-                return;
-            out.println(file.getName());
+        private void list(Path dir) throws IOException {
+            boolean needAttrs = longFormat || sortKey != 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir);
+                 SortedListing sorted = new SortedListing(sortLimit)) {
+                for (Path file : stream) {
+                    if (!printHidden && Files.isHidden(file))
+                        continue;
+                    if (!needAttrs) {
+                        out.println(file.getFileName());
+                        continue;
+                    }
+
+                    BasicFileAttributes attrs = readAttributes(file, LinkOption.NOFOLLOW_LINKS);
+                    String line = format(file, attrs);
+                    if (sortKey == 0)
+                        out.println(line);
+                    else if (sortKey == 'S')
+                        sorted.add(attrs.size(), file.getFileName().toString(), line);
+                    else
+                        sorted.add(attrs.lastModifiedTime().toMillis(), file.getFileName().toString(), line);
+                }
+                sorted.writeTo(out);
+            }
+        }
+
+        private BasicFileAttributes readAttributes(Path file, LinkOption... options) throws IOException {
+            if (posix)
+                return Files.readAttributes(file, PosixFileAttributes.class, options);
+            return Files.readAttributes(file, BasicFileAttributes.class, options);
+        }
+
+        private String format(Path file, BasicFileAttributes attrs) {
+            String name = file.getFileName().toString();
+            if (!longFormat)
+                return name;
+
+            char type = attrs.isDirectory() ? 'd' : attrs.isSymbolicLink() ? 'l' : '-';
+            String perms = "---------", owner = "-", group = "-";
+            if (attrs instanceof PosixFileAttributes) {
+                PosixFileAttributes pa = (PosixFileAttributes) attrs;
+                perms = PosixFilePermissions.toString(pa.permissions());
+                owner = pa.owner().getName();
+                group = pa.group().getName();
+            }
+            String time = timeFormat.format(new Date(attrs.lastModifiedTime().toMillis()));
+            return String.format("%c%s %-8s %-8s %10d %s %s", type, perms, owner, group, attrs.size(), time, name);
         }
     }
 
@@ -254,46 +353,47 @@ public class Shell {
             super(is, os, eos);
         }
 
-        private Set<String> dirs = new TreeSet<>();
+        private final Path indexPath = Paths.get(homePath, ".shell_du.index");
 
         /**
          * Print apparent size of directory (as du with key '--apparent-size' in bash).
+         * With '--index' unchanged directories are taken from the index in the home directory.
+         * The sizes are then approximate: files modified in place are not counted again
+         * until an entry is added, removed or renamed in their directory.
+         * '--no-index', the default, lists every directory.
          */
         @Override public int perform(String param) throws Exception {
-            File dir = (param == null) ? currentDir : new File(currentDir, param);
-            printDirSize(dir);
-            return 0;
-        }
-
-        private void printDirSize(File file) throws IOException {
-            String path = file.getPath();
-            if (dirs.contains(path))
-                return;
-
-            File[] fs = file.listFiles();
-            if (fs != null) {
-                for (File f : fs)
-                    if (f.isDirectory())
-                        printDirSize(f);
+            boolean useIndex = false;
+            while (param != null && (param.startsWith("--index") || param.startsWith("--no-index"))) {
+                String option = param.startsWith("--index") ? "--index" : "--no-index";
+                useIndex = option.equals("--index");
+                param = param.substring(option.length()).trim();
+                param = param.isEmpty() ? null : param;
             }
 
-            long size = (long) Math.round(getDirSize(file));
-            out.printf("%-10d %s\n", size, path);
-            dirs.add(path);
-        }
+            File dir = (param == null) ? currentDir : param.startsWith("/") ? new File(param) : new File(currentDir, param);
+            if (!dir.exists()) {
+                err.println("du: cannot access '" + param + "': No such file or directory");
+                return 1;
+            }
 
-        private double getDirSize(File file) {
-            File[] fs = file.listFiles();
-            double size = 4;
-            if (fs != null) {
-                for (File f : fs) {
-                    if (f.isFile())
-                        size += f.length() / 1024.0;
-                    else
-                        size += getDirSize(f);
+            DuIndex index = useIndex ? DuIndex.load(indexPath) : null;
+            DiskUsage du = new DiskUsage(ForkJoinPool.commonPool(), err, index);
+            printDirSize(du.walk(dir.getAbsoluteFile().toPath()));
+            if (index != null) {
+                try {
+                    index.save();
+                } catch (IOException e) {
+                    err.println("du: cannot update index '" + indexPath + "': " + e.getMessage());
                 }
             }
-            return size;
+            return 0;
+        }
+
+        private void printDirSize(DiskUsage.Node node) {
+            for (DiskUsage.Node child : node.children)
+                printDirSize(child);
+            out.printf("%-10d %s\n", node.getSize(), node.path);
         }
     }
 
@@ -359,7 +459,7 @@ public class Shell {
 
         @Override public int perform(String path) throws IOException {
             if (path == null) {
-                for (int i = 0; in.hasNextLine() && i < 10; i++) {
+                for (int i = 0; i < 10 && in.hasNextLine(); i++) {
                     out.println(in.nextLine());
                 }
                 return 0;
@@ -378,7 +478,7 @@ public class Shell {
                 }
 
                 try (Scanner scanner = new Scanner(file)) {
-                    for (int i = 0; scanner.hasNextLine() && i < 10; i++) {
+                    for (int i = 0; i < 10 && scanner.hasNextLine(); i++) {
                         out.println(scanner.nextLine());
                     }
                 }
@@ -389,8 +489,13 @@ public class Shell {
 
     /**
      * Print the last 10 lines of each file.
+     * With '-n N' print the last N lines, with '-c N' the last N bytes.
+     * With '-f' keep printing the data appended to the files.
+     * Files are read backwards from the end in blocks, so the cost does not depend on the file size.
      */
     public class Tail extends Command {
+        private static final int BLOCK_SIZE = 8192;
+
         public Tail() {
             super(Shell.this.is, Shell.this.os, Shell.this.eos);
         }
@@ -399,48 +504,177 @@ public class Shell {
             super(is, os, eos);
         }
 
-        @Override public int perform(String path) throws IOException {
-            Queue<String> lines = new ArrayDeque<>(10);
-            if (path != null) {
-                for (String p : path.split(" ")) {
-                    File file = p.startsWith("/") ? new File(p) : new File(currentDir, p);
+        @Override public int perform(String param) throws IOException {
+            long count = 10;
+            boolean bytes = false;
+            boolean follow = false;
+            List<String> pathes = new ArrayList<>();
+
+            String[] args = (param == null) ? new String[0] : param.split(" ");
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-n":
+                    case "-c":
+                        bytes = args[i].equals("-c");
+                        if (i + 1 == args.length) {
+                            err.println("tail: option requires an argument -- '" + args[i].charAt(1) + "'");
+                            return 1;
+                        }
+                        try {
+                            count = Long.parseLong(args[++i]);
+                        } catch (NumberFormatException e) {
+                            count = -1;
+                        }
+                        if (count < 0) {
+                            err.println("tail: invalid number of " + (bytes ? "bytes" : "lines") + ": '" + args[i] + "'");
+                            return 1;
+                        }
+                        break;
+                    case "-f":
+                        follow = true;
+                        break;
+                    default:
+                        pathes.add(args[i]);
+                }
+            }
 
-                    if (!file.exists()) {
-                        err.println("tail: cannot open '" + p + "' for reading: No such file or directory");
-                        return 1;
-                    }
-                    if (!file.canRead()) {
-                        err.println("tail: cannot open '" + p + "' for reading: Permission denied");
-                        return 2;
-                    }
+            if (pathes.isEmpty()) {
+                if (bytes)
+                    tailBytes(count);
+                else
+                    tailLines(count);
+                return 0;
+            }
 
-                    try (Scanner scanner = new Scanner(file)) {
-                        while (scanner.hasNextLine()) {
-                            if (lines.size() > 10)
-                                lines.poll();
-                            lines.offer(scanner.nextLine());
-                        }
-                    }
+            Follower follower = new Follower(os, err, pathes.size() > 1);
+            int last = -1;
+            for (String p : pathes) {
+                File file = p.startsWith("/") ? new File(p) : new File(currentDir, p);
 
-                    for (String s : lines)
-                        out.println(s);
+                if (!file.exists()) {
+                    err.println("tail: cannot open '" + p + "' for reading: No such file or directory");
+                    return 1;
                 }
-            } else  {
-                while (in.hasNextLine()) {
-                    if (lines.size() > 10)
-                        lines.poll();
-                    lines.offer(in.nextLine());
+                if (!file.canRead()) {
+                    err.println("tail: cannot open '" + p + "' for reading: Permission denied");
+                    return 2;
+                }
+
+                if (pathes.size() > 1) {
+                    // a blank line separates the files, after the end of a last line without a line feed
+                    if (last >= 0)
+                        out.print((last == '\n') ? "\n" : "\n\n");
+                    out.println("==> " + p + " <==");
+                    last = '\n';
+                }
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    long size = channel.size();
+                    long from = bytes ? Math.max(0, size - count) : seekLines(channel, count);
+                    int end = copy(channel, from, size);
+                    if (end >= 0)
+                        last = end;
+                    follower.add(file.toPath(), size);
                 }
-                for (String s : lines)
-                    out.println(s);
-                return 0;
             }
+            if (follow)
+                follower.follow();
             return 0;
         }
+
+        /**
+         * @return the position of the first of the last <code>lines</code> lines of the file
+         */
+        private long seekLines(FileChannel channel, long lines) throws IOException {
+            long size = channel.size();
+            if (lines == 0)
+                return size;
+
+            ByteBuffer buf = ByteBuffer.allocate(BLOCK_SIZE);
+            long pos = size;
+            while (pos > 0) {
+                int len = (int) Math.min(BLOCK_SIZE, pos);
+                pos -= len;
+                buf.clear();
+                buf.limit(len);
+                while (buf.hasRemaining())
+                    if (channel.read(buf, pos + buf.position()) < 0)
+                        throw new EOFException("tail: file truncated");
+
+                for (int i = len - 1; i >= 0; i--) {
+                    // the line feed ending the last line does not start a new one
+                    if (buf.get(i) == '\n' && pos + i != size - 1 && --lines == 0)
+                        return pos + i + 1;
+                }
+            }
+            return 0;
+        }
+
+        /**
+         * @return the last byte copied, or -1 if there was none
+         */
+        private int copy(FileChannel channel, long from, long to) throws IOException {
+            out.flush();
+            ByteBuffer buf = ByteBuffer.allocate(BLOCK_SIZE);
+            int last = -1;
+            while (from < to) {
+                buf.clear();
+                buf.limit((int) Math.min(BLOCK_SIZE, to - from));
+                int n = channel.read(buf, from);
+                if (n < 0)
+                    break;
+                if (n > 0)
+                    last = buf.get(n - 1) & 0xff;
+                os.write(buf.array(), 0, n);
+                from += n;
+            }
+            os.flush();
+            return last;
+        }
+
+        private void tailLines(long count) {
+            Queue<String> lines = new ArrayDeque<>();
+            while (in.hasNextLine()) {
+                String line = in.nextLine();
+                if (count == 0)
+                    continue;
+                if (lines.size() == count)
+                    lines.poll();
+                lines.offer(line);
+            }
+            for (String s : lines)
+                out.println(s);
+        }
+
+        private void tailBytes(long count) throws IOException {
+            int n = (int) Math.min(count, Integer.MAX_VALUE - 8);
+            // the ring grows with the input up to n bytes, a large count on a short input costs nothing
+            byte[] ring = new byte[Math.min(n, BLOCK_SIZE)];
+            byte[] buf = new byte[BLOCK_SIZE];
+            long total = 0;
+            int len;
+            while ((len = is.read(buf)) > 0) {
+                if (ring.length < n && total + len > ring.length)
+                    ring = Arrays.copyOf(ring, (int) Math.min(n, Math.max(2L * ring.length, total + len)));
+                for (int i = 0; i < len && n > 0; i++)
+                    ring[(int) ((total + i) % n)] = buf[i];
+                total += len;
+            }
+
+            int size = (int) Math.min(total, n);
+            int start = (int) ((total - size) % Math.max(n, 1));
+            out.flush();
+            for (int i = 0; i < size; i++)
+                os.write(ring[(start + i) % n]);
+            os.flush();
+        }
     }
 
     /**
      * Print the matching lines.
+     * Patterns are fixed strings by default ('-F') or regular expressions with '-E',
+     * several patterns are given with '-e'.
+     * Files are memory-mapped and searched on raw bytes, decoding only the matching lines.
+     * With '--parallel' the chunks of a file are searched in parallel.
      */
     public class Grep extends Command {
         public Grep() {
@@ -455,30 +689,68 @@ public class Shell {
             in = new Scanner(is);
             out = new PrintWriter(os, true);
             if (str == null || str.isEmpty()) {
-                err.println("Usage: grep PATTERN [FILE]...");
+                err.println("Usage: grep [-E | -F] [--parallel] [-e PATTERN]... [PATTERN] [FILE]...");
                 return 1;
             }
 
-            Pattern p = Pattern.compile("\\\'(.*?)\\\'|\\\"(.*?)\\\"");
-            Matcher m = p.matcher(str);
-
-            String pattern = null;
-            String pathes = null;
-
-            if (m.find()) {
-                pattern = m.group();
-                pathes = str.replaceFirst(pattern, "").trim();
-                pattern = pattern.replaceAll("\'", "").replaceAll("\"", "");
-                out.println(pattern);
+            boolean regex = false;
+            boolean parallel = false;
+            List<String> patterns = new ArrayList<>();
+            List<String> pathes = new ArrayList<>();
+            boolean options = true;
+
+            List<String> args = splitArgs(str);
+            for (int i = 0; i < args.size(); i++) {
+                String arg = args.get(i);
+                if (options && arg.startsWith("-")) {
+                    switch (arg) {
+                        case "-E":
+                            regex = true;
+                            break;
+                        case "-F":
+                            regex = false;
+                            break;
+                        case "-e":
+                            if (i + 1 == args.size()) {
+                                err.println("grep: option requires an argument -- 'e'");
+                                return 1;
+                            }
+                            patterns.add(args.get(++i));
+                            break;
+                        case "--parallel":
+                            parallel = true;
+                            break;
+                        case "--":
+                            options = false;
+                            break;
+                        default:
+                            err.println("grep: unrecognized option '" + arg + "'");
+                            return 1;
+                    }
+                } else if (patterns.isEmpty()) {
+                    options = false;
+                    patterns.add(arg);
+                } else {
+                    options = false;
+                    pathes.add(arg);
+                }
             }
-            else {
-                String[] args = str.split(" ", 2);
-                pattern = args[0];
-                pathes = (args.length == 2) ? args[1] : null;
+            if (patterns.isEmpty()) {
+                err.println("Usage: grep [-E | -F] [--parallel] [-e PATTERN]... [PATTERN] [FILE]...");
+                return 1;
             }
 
-            if (pathes != null) {
-                for (String path : pathes.split(" ")) {
+            LineSearcher searcher;
+            try {
+                searcher = newSearcher(patterns, regex, Charset.defaultCharset());
+            } catch (PatternSyntaxException e) {
+                err.println("grep: " + e.getDescription() + " in '" + e.getPattern() + "'");
+                return 2;
+            }
+
+            if (!pathes.isEmpty()) {
+                MappedGrep grep = new MappedGrep(searcher, parallel ? ForkJoinPool.commonPool() : null);
+                for (String path : pathes) {
                     File file = path.startsWith("/") ? new File(path) : new File(currentDir, path);
                     if (!file.exists()) {
                         err.println("grep: " + path + ": No such file or directory");
@@ -489,18 +761,12 @@ public class Shell {
                         return 3;
                     }
 
-                    try (Scanner s = new Scanner(file)) {
-                        while (s.hasNextLine()) {
-                            String line = s.nextLine();
-                            if (line.contains(pattern))
-                                out.println(line);
-                        }
-                    }
+                    grep.grep(file, out);
                 }
             } else {
                 while (in.hasNextLine()) {
                     String line = in.nextLine();
-                    if (line.contains(pattern))
+                    if (searcher.matches(line))
                         out.println(line);
                 }
             }
@@ -508,20 +774,55 @@ public class Shell {
             closeOutputStream();
             return 0;
         }
+
+        /**
+         * Literal patterns are searched on bytes, a single one with Boyer-Moore-Horspool
+         * and several ones at once with Aho-Corasick. Regular expressions are joined into one alternation.
+         */
+        private LineSearcher newSearcher(List<String> patterns, boolean regex, Charset charset) {
+            if (regex) {
+                StringBuilder sb = new StringBuilder();
+                for (String p : patterns)
+                    sb.append(sb.length() == 0 ? "" : "|").append(patterns.size() == 1 ? p : "(?:" + p + ")");
+                Pattern p = patternCache.compile(sb.toString());
+                return new PredicateSearcher(line -> p.matcher(line).find(), charset);
+            }
+            if (patterns.size() == 1)
+                return new LiteralSearcher(patterns.get(0), charset);
+            return new AhoCorasickSearcher(patterns, charset);
+        }
+
+        /**
+         * Split arguments by spaces, keeping quoted ones together and removing their quotes.
+         */
+        private List<String> splitArgs(String str) {
+            List<String> args = new ArrayList<>();
+            Matcher m = argPattern.matcher(str);
+            while (m.find()) {
+                if (m.group(1) != null)
+                    args.add(m.group(1));
+                else if (m.group(2) != null)
+                    args.add(m.group(2));
+                else
+                    args.add(m.group());
+            }
+            return args;
+        }
     }
 
 
+    /**
+     * Connect the output of one command to the input of the next one through an in-memory {@link Pipe}.
+     */
     public class Piper {
-        private final String bufferPath = homePath + "/.shell_buffer.tmp";
-        private boolean bufferFlag = true;
+        private final int capacity;
 
-        private File buffer1 = new File(bufferPath + "1");
-        private File buffer2 = new File(bufferPath + "2");
-        {
-            try {
-                buffer1.createNewFile();
-                buffer2.createNewFile();
-            } catch (Exception e) {}
+        public Piper() {
+            this(Pipe.DEFAULT_CAPACITY);
+        }
+
+        public Piper(int capacity) {
+            this.capacity = capacity;
         }
 
         public int pipe(Pair<Command, String> lhs,
@@ -529,18 +830,10 @@ public class Shell {
             Command lCmd = lhs.getKey();
             Command rCmd = rhs.getKey();
 
-            File buffer = (bufferFlag == true) ? buffer1 : buffer2;
-
-            buffer.delete();
-            buffer.createNewFile();
-
-            OutputStream os = new FileOutputStream(buffer);
-            InputStream is = new FileInputStream(buffer);
-
-            lCmd.setOutputStream(os);
-            rCmd.setInputStream(is);
+            Pipe pipe = new Pipe(capacity);
 
-            bufferFlag = !bufferFlag;
+            lCmd.setOutputStream(pipe.getOutputStream());
+            rCmd.setInputStream(pipe.getInputStream());
             return 0;
         }
     }
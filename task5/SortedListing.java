@@ -0,0 +1,170 @@
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Orders the lines of a listing by a key, largest first, and then by name.
+ * At most <code>limit</code> lines are kept in memory: larger listings are sorted in runs,
+ * spilled to temporary files and merged when written out.
+ * At most {@link #MAX_FAN_IN} runs are open at once; more runs are first merged in groups.
+ */
+public class SortedListing implements Closeable {
+    public static final int DEFAULT_LIMIT = 100000;
+    public static final int MAX_FAN_IN = 64;
+
+    private static final Comparator<Item> ORDER = (a, b) ->
+            (a.key != b.key) ? Long.compare(b.key, a.key) : a.name.compareTo(b.name);
+
+    private final int limit;
+    private final List<Item> items = new ArrayList<>();
+    private final List<Run> runs = new ArrayList<>();
+
+    public SortedListing() {
+        this(DEFAULT_LIMIT);
+    }
+
+    public SortedListing(int limit) {
+        if (limit <= 0)
+            throw new IllegalArgumentException("Illegal limit: " + limit);
+        this.limit = limit;
+    }
+
+    public void add(long key, String name, String line) throws IOException {
+        items.add(new Item(key, name, line));
+        if (items.size() >= limit)
+            spill();
+    }
+
+    public void writeTo(PrintWriter out) throws IOException {
+        if (runs.isEmpty()) {
+            items.sort(ORDER);
+            for (Item i : items)
+                out.println(i.line);
+            items.clear();
+            return;
+        }
+
+        spill();
+        while (runs.size() > MAX_FAN_IN) {
+            List<Run> group = new ArrayList<>(runs.subList(0, MAX_FAN_IN));
+            runs.subList(0, MAX_FAN_IN).clear();
+            try {
+                runs.add(merge(group));
+            } finally {
+                for (Run r : group)
+                    r.close();
+            }
+        }
+
+        PriorityQueue<Run> heap = open(runs);
+        while (!heap.isEmpty())
+            out.println(next(heap).line);
+    }
+
+    @Override public void close() {
+        for (Run r : runs)
+            r.close();
+        runs.clear();
+        items.clear();
+    }
+
+    private void spill() throws IOException {
+        if (items.isEmpty())
+            return;
+        items.sort(ORDER);
+        Path file = Files.createTempFile("ls", ".run");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            for (Item i : items)
+                write(out, i);
+        }
+        runs.add(new Run(file, items.size()));
+        items.clear();
+    }
+
+    /**
+     * Merge the runs into a new run; the merged runs are left open.
+     */
+    private static Run merge(List<Run> group) throws IOException {
+        Path file = Files.createTempFile("ls", ".run");
+        int size = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            PriorityQueue<Run> heap = open(group);
+            for (; !heap.isEmpty(); size++)
+                write(out, next(heap));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+        return new Run(file, size);
+    }
+
+    private static PriorityQueue<Run> open(List<Run> runs) throws IOException {
+        PriorityQueue<Run> heap = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> ORDER.compare(a.head, b.head));
+        for (Run r : runs)
+            if (r.open())
+                heap.add(r);
+        return heap;
+    }
+
+    /**
+     * @return the smallest head of the runs, the run it was taken from is advanced
+     */
+    private static Item next(PriorityQueue<Run> heap) throws IOException {
+        Run r = heap.poll();
+        Item head = r.head;
+        if (r.next())
+            heap.add(r);
+        return head;
+    }
+
+    private static void write(DataOutput out, Item i) throws IOException {
+        out.writeLong(i.key);
+        out.writeUTF(i.name);
+        out.writeUTF(i.line);
+    }
+
+    private static class Item {
+        final long key;
+        final String name;
+        final String line;
+
+        Item(long key, String name, String line) {
+            this.key = key;
+            this.name = name;
+            this.line = line;
+        }
+    }
+
+    private static class Run {
+        private final Path file;
+        private int remaining;
+        private DataInputStream in;
+        Item head;
+
+        Run(Path file, int size) {
+            this.file = file;
+            this.remaining = size;
+        }
+
+        boolean open() throws IOException {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)));
+            return next();
+        }
+
+        boolean next() throws IOException {
+            if (remaining == 0)
+                return false;
+            remaining--;
+            head = new Item(in.readLong(), in.readUTF(), in.readUTF());
+            return true;
+        }
+
+        void close() {
+            try {
+                if (in != null)
+                    in.close();
+                Files.deleteIfExists(file);
+            } catch (IOException e) {}
+        }
+    }
+}